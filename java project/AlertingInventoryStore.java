@@ -0,0 +1,137 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Wraps another {@link InventoryStore} and reports every stock change to {@link StockAlerts}.
+ * Adjustments are exact, since the store returns the new level
+ * (and, for {@link #computeQuantityInStock}, hands over the old one). Setting stock outright or
+ * updating a product reads the old level first, so a change racing with it on another thread
+ * can be missed.
+ */
+class AlertingInventoryStore implements InventoryStore {
+    private final InventoryStore store;
+    private final StockAlerts alerts;
+
+    public AlertingInventoryStore(InventoryStore store, StockAlerts alerts) {
+        this.store = store;
+        this.alerts = alerts;
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        store.addProduct(product);
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        store.addProducts(products);
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        if (!alerts.hasThresholds()) {
+            store.updateProduct(product);
+            return;
+        }
+        Product before = store.getProductById(product.getProductId());
+        store.updateProduct(product);
+        if (before != null) {
+            alerts.stockChanged(product.getProductId(), product.getCategory(), before.getQuantityInStock(),
+                    product.getQuantityInStock());
+        }
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        if (!alerts.hasThresholds()) {
+            store.updateQuantityInStock(productId, quantityInStock);
+            return;
+        }
+        Product before = store.getProductById(productId);
+        store.updateQuantityInStock(productId, quantityInStock);
+        if (before != null) {
+            alerts.stockChanged(productId, before.getCategory(), before.getQuantityInStock(), quantityInStock);
+        }
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        int current = store.adjustQuantityInStock(productId, delta);
+        stockChanged(productId, current - delta, current);
+        return current;
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        int[] before = new int[1];
+        int current = store.computeQuantityInStock(productId, stock -> {
+            before[0] = stock;
+            return update.applyAsInt(stock);
+        });
+        stockChanged(productId, before[0], current);
+        return current;
+    }
+
+    private void stockChanged(int productId, int before, int current) {
+        if (before != current && alerts.hasThresholds()) {
+            String category = null;
+            if (alerts.hasCategoryThresholds()) {
+                Product product = store.getProductById(productId);
+                category = product != null ? product.getCategory() : null;
+            }
+            alerts.stockChanged(productId, category, before, current);
+        }
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        store.removeProduct(productId);
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        return store.getProductById(productId);
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return store.getAllProducts();
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        return store.getProductByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        return store.getProductsByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        return store.getProductsByCategory(category);
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return store.getCategories();
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        return store.getCategoryStats(category);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ProductCursor cursor() {
+        return store.cursor();
+    }
+}
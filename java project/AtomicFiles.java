@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Helpers for replacing a file by writing a temporary file next to it and renaming it into
+ * place, so a crash leaves the old version or the new one and never half of one.
+ */
+final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    /**
+     * Creates an empty temporary file in the same directory as {@code target}, to be renamed onto
+     * it once written. Unlike {@link Files#createTempFile}, which always makes the file readable
+     * by its owner only, the file gets the permissions a plain new file gets (the umask applies),
+     * or those of {@code target} if it exists, so replacing a file does not change who can read it.
+     */
+    public static Path createTempFileFor(Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        while (true) {
+            Path temporary = absolute.resolveSibling(absolute.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                Files.createFile(temporary);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            try {
+                if (Files.exists(absolute)) {
+                    Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(absolute));
+                }
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; the new file gets the directory's defaults.
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            return temporary;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import javax.swing.*;
+import java.awt.Component;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A blocking GUI operation run on a worker thread behind a progress dialog. {@link #compute()}
+ * runs off the event dispatch thread; everything else ({@link #onBatch(List)},
+ * {@link #onSuccess(Object)}, {@link #onCancelled()}, {@link #onFailure(Throwable)}) runs on it.
+ *
+ * Partial results handed to {@link #publishBatch(Object)} are delivered in batches, coalesced by
+ * Swing so a fast producer does not flood the event queue. The dialog's Cancel button cancels
+ * the task; {@link #compute()} should check {@link #isCancelled()} at convenient points and stop.
+ *
+ * @param <T> the result of the operation
+ * @param <V> the partial results it publishes while running
+ */
+abstract class BackgroundTask<T, V> extends SwingWorker<T, V> {
+    private static final int CANCEL_POLL_MILLIS = 200;
+
+    private final String description;
+    private final ProgressMonitor monitor;
+    private final Timer cancelPoller;
+
+    protected BackgroundTask(Component parent, String description) {
+        this.description = description;
+        this.monitor = new ProgressMonitor(parent, description + "...", "", 0, 100);
+        // ProgressMonitor has no cancel listener, so watch its Cancel button from the EDT.
+        this.cancelPoller = new Timer(CANCEL_POLL_MILLIS, event -> {
+            if (monitor.isCanceled()) {
+                cancel(true);
+            }
+        });
+        addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                monitor.setProgress((Integer) event.getNewValue());
+            }
+        });
+    }
+
+    /**
+     * Starts the task on a worker thread. Call this from the event dispatch thread.
+     */
+    public void start() {
+        cancelPoller.start();
+        execute();
+    }
+
+    /**
+     * Does the work. Runs on a worker thread.
+     */
+    protected abstract T compute() throws Exception;
+
+    /**
+     * Receives partial results published since the last call. Runs on the event dispatch thread.
+     */
+    protected void onBatch(List<V> batch) {
+    }
+
+    protected abstract void onSuccess(T result);
+
+    protected void onCancelled() {
+        JOptionPane.showMessageDialog(null, description + " cancelled.");
+    }
+
+    protected void onFailure(Throwable cause) {
+        JOptionPane.showMessageDialog(null, "Error: " + description + ": " + cause.getMessage());
+    }
+
+    /**
+     * Reports how far along the task is; may be called from {@link #compute()}.
+     */
+    protected final void reportProgress(long done, long total) {
+        setProgress(total <= 0 ? 0 : (int) Math.min(100, done * 100 / total));
+    }
+
+    /**
+     * Hands a partial result to {@link #onBatch(List)}; may be called from {@link #compute()}.
+     */
+    protected final void publishBatch(V result) {
+        publish(result);
+    }
+
+    /**
+     * Replaces the line of detail shown under the description in the progress dialog. Call this
+     * from the event dispatch thread, such as from {@link #onBatch(List)}.
+     */
+    protected final void setNote(String note) {
+        monitor.setNote(note);
+    }
+
+    @Override
+    protected final T doInBackground() throws Exception {
+        return compute();
+    }
+
+    @Override
+    protected final void process(List<V> batch) {
+        if (!isCancelled()) {
+            onBatch(batch);
+        }
+    }
+
+    @Override
+    protected final void done() {
+        cancelPoller.stop();
+        monitor.close();
+        try {
+            onSuccess(get());
+        } catch (CancellationException e) {
+            onCancelled();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                onCancelled();
+            } else {
+                onFailure(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Wraps another {@link InventoryStore} and remembers the id of every product added, changed or
+ * removed through it, so a save can write just those rows (see {@link IncrementalInventoryFile}).
+ * An id is noted after the write it stands for, so a save that has seen the note also sees the
+ * write.
+ */
+class ChangeTrackingInventoryStore implements InventoryStore {
+    private final InventoryStore store;
+    private final AtomicReference<Set<Integer>> changed = new AtomicReference<>(ConcurrentHashMap.newKeySet());
+
+    public ChangeTrackingInventoryStore(InventoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * How many distinct products have changed since the last {@link #resetChanges()}.
+     */
+    public int getChangedCount() {
+        return changed.get().size();
+    }
+
+    /**
+     * The ids of the products changed since the last {@link #resetChanges()}, in no particular order.
+     */
+    public int[] getChangedIds() {
+        Set<Integer> ids = changed.get();
+        int[] copy = new int[ids.size()];
+        int count = 0;
+        for (int id : ids) {
+            // The set can grow while it is copied; later ids are caught by the next save.
+            if (count == copy.length) {
+                break;
+            }
+            copy[count++] = id;
+        }
+        return count == copy.length ? copy : Arrays.copyOf(copy, count);
+    }
+
+    /**
+     * Starts tracking afresh and returns the ids noted so far, which the caller hands back to
+     * {@link #restoreChanges(Set)} if whatever it did with them fails. Changes made while the
+     * caller is reading the store may be both in what it reads and in the new set, never in
+     * neither.
+     */
+    public Set<Integer> resetChanges() {
+        return changed.getAndSet(ConcurrentHashMap.newKeySet());
+    }
+
+    public void restoreChanges(Set<Integer> ids) {
+        changed.get().addAll(ids);
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        store.addProduct(product);
+        changed.get().add(product.getProductId());
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        store.addProducts(products);
+        Set<Integer> ids = changed.get();
+        for (Product product : products) {
+            ids.add(product.getProductId());
+        }
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        store.updateProduct(product);
+        changed.get().add(product.getProductId());
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        store.updateQuantityInStock(productId, quantityInStock);
+        changed.get().add(productId);
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        int current = store.adjustQuantityInStock(productId, delta);
+        changed.get().add(productId);
+        return current;
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        int current = store.computeQuantityInStock(productId, update);
+        changed.get().add(productId);
+        return current;
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        store.removeProduct(productId);
+        changed.get().add(productId);
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        return store.getProductById(productId);
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return store.getAllProducts();
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        return store.getProductByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        return store.getProductsByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        return store.getProductsByCategory(category);
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return store.getCategories();
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        return store.getCategoryStats(category);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ProductCursor cursor() {
+        return store.cursor();
+    }
+}
@@ -0,0 +1,729 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Inventory backend for multi-million-SKU catalogues. Each product is a row in a set of primitive
+ * column arrays, and names and categories are dictionary-encoded as int codes, so the catalogue
+ * costs a few dozen bytes per product and no per-product objects. Products that callers get back
+ * are detached copies; changes to them only reach the store through {@link #updateProduct(Product)}
+ * or the stock methods.
+ *
+ * Rows stay in insertion order. Removed rows are left as holes and squeezed out once they outnumber
+ * the live ones. Dictionary entries are never dropped, so a catalogue that keeps churning through
+ * new names grows its dictionaries.
+ */
+class ColumnarInventoryManager implements InventoryStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Same striping as InventoryManager: stock changes to unrelated products rarely share a lock.
+    private static final int STOCK_LOCK_STRIPES = 256;
+    // Marks a removed row in the nameCodes column and an empty slot in the chains.
+    private static final int NONE = -1;
+
+    // Row columns. Rows below rowCount are in use; removed rows have nameCodes[row] == NONE.
+    private int[] productIds;
+    private int[] quantities;
+    private double[] prices;
+    private int[] nameCodes;
+    private int[] categoryCodes;
+    // Doubly linked chains through the rows sharing a name or a category, oldest first.
+    private int[] nextSameName;
+    private int[] previousSameName;
+    private int[] nextSameCategory;
+    private int[] previousSameCategory;
+    private int rowCount;
+    private int removedRows;
+    // Bumped whenever rows move, so open cursors can tell their position is gone.
+    private int compactions;
+
+    private final Dictionary names;
+    private final Dictionary categories;
+    // Per-code chain ends and category totals, indexed by dictionary code.
+    private int[] firstByName;
+    private int[] lastByName;
+    private int[] firstByCategory;
+    private int[] lastByCategory;
+    private int[] productCountByCategory;
+    private AtomicLongArray unitsByCategory;
+    // Stock value per category as double bits, updated with compare-and-set.
+    private AtomicLongArray valueByCategory;
+
+    private final IdIndex rowsById;
+
+    // Structural changes take the write lock. Reads and stock changes take the read lock, and
+    // stock changes additionally take the product's stripe so rows never move underneath them.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] stockLocks;
+
+    public ColumnarInventoryManager() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ColumnarInventoryManager(int expectedProducts) {
+        int capacity = Math.max(16, expectedProducts);
+        this.productIds = new int[capacity];
+        this.quantities = new int[capacity];
+        this.prices = new double[capacity];
+        this.nameCodes = new int[capacity];
+        this.categoryCodes = new int[capacity];
+        this.nextSameName = new int[capacity];
+        this.previousSameName = new int[capacity];
+        this.nextSameCategory = new int[capacity];
+        this.previousSameCategory = new int[capacity];
+        this.names = new Dictionary();
+        this.categories = new Dictionary();
+        this.firstByName = new int[0];
+        this.lastByName = new int[0];
+        this.firstByCategory = new int[0];
+        this.lastByCategory = new int[0];
+        this.productCountByCategory = new int[0];
+        this.unitsByCategory = new AtomicLongArray(0);
+        this.valueByCategory = new AtomicLongArray(0);
+        this.rowsById = new IdIndex(capacity);
+        this.stockLocks = new Object[STOCK_LOCK_STRIPES];
+        for (int i = 0; i < stockLocks.length; i++) {
+            stockLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        lock.writeLock().lock();
+        try {
+            add(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        lock.writeLock().lock();
+        try {
+            ensureRowCapacity(rowCount + products.size());
+            for (Product product : products) {
+                add(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(product.getProductId());
+            if (row == NONE) {
+                return;
+            }
+            int nameCode = names.encode(product.getProductName());
+            if (nameCode != nameCodes[row]) {
+                unlinkName(row);
+                linkName(row, nameCode);
+            }
+            unlinkCategory(row);
+            quantities[row] = product.getQuantityInStock();
+            prices[row] = product.getPrice();
+            linkCategory(row, categories.encode(product.getCategory()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(productId);
+            if (row != NONE) {
+                synchronized (stockLock(productId)) {
+                    applyStockDelta(row, quantityInStock - quantities[row]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(productId);
+            if (row == NONE) {
+                throw new IllegalArgumentException("Unknown product id: " + productId);
+            }
+            synchronized (stockLock(productId)) {
+                applyStockDelta(row, delta);
+                return quantities[row];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(productId);
+            if (row == NONE) {
+                throw new IllegalArgumentException("Unknown product id: " + productId);
+            }
+            synchronized (stockLock(productId)) {
+                applyStockDelta(row, update.applyAsInt(quantities[row]) - quantities[row]);
+                return quantities[row];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(productId);
+            if (row != NONE) {
+                removeRow(row);
+                if (removedRows > rowCount / 2) {
+                    compact();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(productId);
+            return row != NONE ? materialize(row) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        lock.readLock().lock();
+        try {
+            List<Product> products = new ArrayList<>(rowCount - removedRows);
+            for (int row = 0; row < rowCount; row++) {
+                if (nameCodes[row] != NONE) {
+                    products.add(materialize(row));
+                }
+            }
+            return products;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        lock.readLock().lock();
+        try {
+            int nameCode = names.find(productName);
+            return nameCode != NONE && firstByName[nameCode] != NONE ? materialize(firstByName[nameCode]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        lock.readLock().lock();
+        try {
+            List<Product> products = new ArrayList<>();
+            int nameCode = names.find(productName);
+            if (nameCode != NONE) {
+                for (int row = firstByName[nameCode]; row != NONE; row = nextSameName[row]) {
+                    products.add(materialize(row));
+                }
+            }
+            return products;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        lock.readLock().lock();
+        try {
+            List<Product> products = new ArrayList<>();
+            int categoryCode = categories.find(category);
+            if (categoryCode != NONE) {
+                for (int row = firstByCategory[categoryCode]; row != NONE; row = nextSameCategory[row]) {
+                    products.add(materialize(row));
+                }
+            }
+            return products;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        lock.readLock().lock();
+        try {
+            Set<String> result = new HashSet<>();
+            for (int code = 0; code < categories.size(); code++) {
+                if (productCountByCategory[code] > 0) {
+                    result.add(categories.decode(code));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        lock.readLock().lock();
+        try {
+            int code = categories.find(category);
+            if (code == NONE) {
+                return new CategoryStats(category, 0, 0, 0.0);
+            }
+            return new CategoryStats(category, productCountByCategory[code], unitsByCategory.get(code),
+                    Double.longBitsToDouble(valueByCategory.get(code)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowCount - removedRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Reads one row per step under the read lock and copies its values into the cursor, so
+    // iterating allocates nothing. Products added during the walk are seen if they land after the
+    // cursor. If rows are compacted mid-walk the cursor can no longer tell where it was and throws
+    // ConcurrentModificationException, like a fail-fast iterator.
+    @Override
+    public ProductCursor cursor() {
+        return new ProductCursor() {
+            private final int expectedCompactions = compactions;
+            private int row = -1;
+            private int productId;
+            private String productName;
+            private int quantityInStock;
+            private double price;
+            private String category;
+
+            @Override
+            public boolean next() {
+                lock.readLock().lock();
+                try {
+                    if (compactions != expectedCompactions) {
+                        throw new ConcurrentModificationException("Inventory rows were compacted");
+                    }
+                    do {
+                        row++;
+                    } while (row < rowCount && nameCodes[row] == NONE);
+                    if (row >= rowCount) {
+                        return false;
+                    }
+                    productId = productIds[row];
+                    productName = names.decode(nameCodes[row]);
+                    quantityInStock = quantities[row];
+                    price = prices[row];
+                    category = categories.decode(categoryCodes[row]);
+                    return true;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public int getProductId() {
+                return productId;
+            }
+
+            @Override
+            public String getProductName() {
+                return productName;
+            }
+
+            @Override
+            public int getQuantityInStock() {
+                return quantityInStock;
+            }
+
+            @Override
+            public double getPrice() {
+                return price;
+            }
+
+            @Override
+            public String getCategory() {
+                return category;
+            }
+        };
+    }
+
+    private Object stockLock(int productId) {
+        int hash = productId ^ (productId >>> 16);
+        return stockLocks[hash & (STOCK_LOCK_STRIPES - 1)];
+    }
+
+    private Product materialize(int row) {
+        return new Product(productIds[row], names.decode(nameCodes[row]), quantities[row], prices[row],
+                categories.decode(categoryCodes[row]));
+    }
+
+    // Caller holds the read lock and the product's stock lock.
+    private void applyStockDelta(int row, int delta) {
+        quantities[row] += delta;
+        int categoryCode = categoryCodes[row];
+        unitsByCategory.addAndGet(categoryCode, delta);
+        addStockValue(categoryCode, delta * prices[row]);
+    }
+
+    private void addStockValue(int categoryCode, double delta) {
+        long current;
+        long updated;
+        do {
+            current = valueByCategory.get(categoryCode);
+            updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+        } while (!valueByCategory.compareAndSet(categoryCode, current, updated));
+    }
+
+    // The methods below change structure and are only called under the write lock.
+
+    private void add(Product product) {
+        int existing = rowsById.get(product.getProductId());
+        if (existing != NONE) {
+            removeRow(existing);
+        }
+        ensureRowCapacity(rowCount + 1);
+        int row = rowCount++;
+        productIds[row] = product.getProductId();
+        quantities[row] = product.getQuantityInStock();
+        prices[row] = product.getPrice();
+        linkName(row, names.encode(product.getProductName()));
+        linkCategory(row, categories.encode(product.getCategory()));
+        rowsById.put(product.getProductId(), row);
+    }
+
+    private void removeRow(int row) {
+        rowsById.remove(productIds[row]);
+        unlinkName(row);
+        unlinkCategory(row);
+        nameCodes[row] = NONE;
+        categoryCodes[row] = NONE;
+        removedRows++;
+    }
+
+    private void linkName(int row, int nameCode) {
+        ensureNameCapacity();
+        nameCodes[row] = nameCode;
+        nextSameName[row] = NONE;
+        previousSameName[row] = lastByName[nameCode];
+        if (lastByName[nameCode] != NONE) {
+            nextSameName[lastByName[nameCode]] = row;
+        } else {
+            firstByName[nameCode] = row;
+        }
+        lastByName[nameCode] = row;
+    }
+
+    private void unlinkName(int row) {
+        int nameCode = nameCodes[row];
+        int previous = previousSameName[row];
+        int next = nextSameName[row];
+        if (previous != NONE) {
+            nextSameName[previous] = next;
+        } else {
+            firstByName[nameCode] = next;
+        }
+        if (next != NONE) {
+            previousSameName[next] = previous;
+        } else {
+            lastByName[nameCode] = previous;
+        }
+    }
+
+    private void linkCategory(int row, int categoryCode) {
+        ensureCategoryCapacity();
+        categoryCodes[row] = categoryCode;
+        nextSameCategory[row] = NONE;
+        previousSameCategory[row] = lastByCategory[categoryCode];
+        if (lastByCategory[categoryCode] != NONE) {
+            nextSameCategory[lastByCategory[categoryCode]] = row;
+        } else {
+            firstByCategory[categoryCode] = row;
+        }
+        lastByCategory[categoryCode] = row;
+        productCountByCategory[categoryCode]++;
+        unitsByCategory.addAndGet(categoryCode, quantities[row]);
+        addStockValue(categoryCode, quantities[row] * prices[row]);
+    }
+
+    private void unlinkCategory(int row) {
+        int categoryCode = categoryCodes[row];
+        int previous = previousSameCategory[row];
+        int next = nextSameCategory[row];
+        if (previous != NONE) {
+            nextSameCategory[previous] = next;
+        } else {
+            firstByCategory[categoryCode] = next;
+        }
+        if (next != NONE) {
+            previousSameCategory[next] = previous;
+        } else {
+            lastByCategory[categoryCode] = previous;
+        }
+        productCountByCategory[categoryCode]--;
+        unitsByCategory.addAndGet(categoryCode, -quantities[row]);
+        addStockValue(categoryCode, -quantities[row] * prices[row]);
+    }
+
+    private void ensureRowCapacity(int rows) {
+        if (rows <= productIds.length) {
+            return;
+        }
+        int capacity = Math.max(rows, productIds.length + (productIds.length >> 1));
+        productIds = Arrays.copyOf(productIds, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        nextSameName = Arrays.copyOf(nextSameName, capacity);
+        previousSameName = Arrays.copyOf(previousSameName, capacity);
+        nextSameCategory = Arrays.copyOf(nextSameCategory, capacity);
+        previousSameCategory = Arrays.copyOf(previousSameCategory, capacity);
+    }
+
+    private void ensureNameCapacity() {
+        int size = names.size();
+        if (firstByName.length < size) {
+            int capacity = Math.max(size, firstByName.length * 2);
+            int oldLength = firstByName.length;
+            firstByName = Arrays.copyOf(firstByName, capacity);
+            lastByName = Arrays.copyOf(lastByName, capacity);
+            Arrays.fill(firstByName, oldLength, capacity, NONE);
+            Arrays.fill(lastByName, oldLength, capacity, NONE);
+        }
+    }
+
+    private void ensureCategoryCapacity() {
+        int size = categories.size();
+        if (firstByCategory.length < size) {
+            int capacity = Math.max(size, firstByCategory.length * 2);
+            int oldLength = firstByCategory.length;
+            firstByCategory = Arrays.copyOf(firstByCategory, capacity);
+            lastByCategory = Arrays.copyOf(lastByCategory, capacity);
+            productCountByCategory = Arrays.copyOf(productCountByCategory, capacity);
+            Arrays.fill(firstByCategory, oldLength, capacity, NONE);
+            Arrays.fill(lastByCategory, oldLength, capacity, NONE);
+            AtomicLongArray units = new AtomicLongArray(capacity);
+            AtomicLongArray values = new AtomicLongArray(capacity);
+            for (int code = 0; code < oldLength; code++) {
+                units.set(code, unitsByCategory.get(code));
+                values.set(code, valueByCategory.get(code));
+            }
+            unitsByCategory = units;
+            valueByCategory = values;
+        }
+    }
+
+    // Squeezes out removed rows, keeping the live ones in order. The name and category chains keep
+    // their order too; only the row numbers in them are rewritten.
+    private void compact() {
+        int[] newRows = new int[rowCount];
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (nameCodes[row] == NONE) {
+                newRows[row] = NONE;
+                continue;
+            }
+            newRows[row] = live;
+            productIds[live] = productIds[row];
+            quantities[live] = quantities[row];
+            prices[live] = prices[row];
+            nameCodes[live] = nameCodes[row];
+            categoryCodes[live] = categoryCodes[row];
+            nextSameName[live] = nextSameName[row];
+            previousSameName[live] = previousSameName[row];
+            nextSameCategory[live] = nextSameCategory[row];
+            previousSameCategory[live] = previousSameCategory[row];
+            live++;
+        }
+        rowCount = live;
+        removedRows = 0;
+        compactions++;
+
+        rowsById.clear();
+        for (int row = 0; row < rowCount; row++) {
+            nextSameName[row] = renumber(newRows, nextSameName[row]);
+            previousSameName[row] = renumber(newRows, previousSameName[row]);
+            nextSameCategory[row] = renumber(newRows, nextSameCategory[row]);
+            previousSameCategory[row] = renumber(newRows, previousSameCategory[row]);
+            rowsById.put(productIds[row], row);
+        }
+        renumberAll(newRows, firstByName);
+        renumberAll(newRows, lastByName);
+        renumberAll(newRows, firstByCategory);
+        renumberAll(newRows, lastByCategory);
+    }
+
+    private static int renumber(int[] newRows, int row) {
+        return row != NONE ? newRows[row] : NONE;
+    }
+
+    private static void renumberAll(int[] newRows, int[] rows) {
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = renumber(newRows, rows[i]);
+        }
+    }
+
+    /**
+     * Assigns dense int codes to strings. Null is a valid value and gets a code of its own.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[16];
+        private int size;
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            codes.put(value, size);
+            return size++;
+        }
+
+        int find(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : NONE;
+        }
+
+        String decode(int code) {
+            return values[code];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Open-addressing map from product id to row, with linear probing and backward-shift deletion
+     * so it never boxes and never leaves tombstones.
+     */
+    private static class IdIndex {
+        private int[] keys;
+        private int[] rows;
+        private int size;
+
+        IdIndex(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+            keys = new int[capacity];
+            rows = new int[capacity];
+            Arrays.fill(rows, NONE);
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); rows[slot] != NONE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return rows[slot];
+                }
+            }
+            return NONE;
+        }
+
+        void put(int key, int row) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (rows[slot] != NONE) {
+                if (keys[slot] == key) {
+                    rows[slot] = row;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            rows[slot] = row;
+            size++;
+        }
+
+        void remove(int key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (rows[slot] != NONE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (rows[slot] == NONE) {
+                return;
+            }
+            // Shift later entries of the probe run back into the gap.
+            int gap = slot;
+            for (int next = (gap + 1) & mask; rows[next] != NONE; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    rows[gap] = rows[next];
+                    gap = next;
+                }
+            }
+            rows[gap] = NONE;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(rows, NONE);
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new int[capacity];
+            rows = new int[capacity];
+            Arrays.fill(rows, NONE);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldRows[i] != NONE) {
+                    put(oldKeys[i], oldRows[i]);
+                }
+            }
+        }
+
+        private static int slot(int key, int mask) {
+            return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+        }
+    }
+}
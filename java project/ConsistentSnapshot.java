@@ -0,0 +1,28 @@
+/**
+ * The inventory and the transaction log at one moment, as taken by {@link Main#openSnapshot()}.
+ * A transaction recorded around that moment is either in both, as a log entry and as the stock
+ * change it made, or in neither. Closing it releases the old product versions the inventory
+ * side keeps; the log side needs no closing.
+ */
+class ConsistentSnapshot implements AutoCloseable {
+    private final VersionedInventoryStore.Snapshot inventory;
+    private final TransactionLog.Snapshot transactions;
+
+    public ConsistentSnapshot(VersionedInventoryStore.Snapshot inventory, TransactionLog.Snapshot transactions) {
+        this.inventory = inventory;
+        this.transactions = transactions;
+    }
+
+    public VersionedInventoryStore.Snapshot getInventory() {
+        return inventory;
+    }
+
+    public TransactionLog.Snapshot getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public void close() {
+        inventory.close();
+    }
+}
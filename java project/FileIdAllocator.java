@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link IdAllocator} that survives restarts. The file holds a ceiling: every id handed out
+ * so far is below it, so a new run starts counting from it and never repeats an id from an
+ * earlier one.
+ *
+ * Writing the file for every id would make creating objects as slow as a disk flush, so the
+ * ceiling is moved ahead in leases of {@code leaseSize} ids. Ids below the ceiling are handed
+ * out from an in-memory counter with no I/O; only the caller that runs past the ceiling writes
+ * the file, and it does so before the id is returned. A crash therefore loses at most the unused
+ * part of one lease, as a gap in the numbering.
+ *
+ * The counter and the ceiling are longs, so that after {@link Integer#MAX_VALUE} has been handed
+ * out the ceiling can move past it and the ids read as exhausted, in this run and the next.
+ */
+class FileIdAllocator implements IdAllocator {
+    private static final int DEFAULT_LEASE_SIZE = 1_000;
+
+    private final Path path;
+    private final int leaseSize;
+    private final AtomicLong next;
+    // Persisted ceiling; every id below it may be handed out without touching the file.
+    private volatile long ceiling;
+
+    private FileIdAllocator(Path path, int leaseSize, long ceiling) {
+        this.path = path;
+        this.leaseSize = leaseSize;
+        this.next = new AtomicLong(ceiling);
+        this.ceiling = ceiling;
+    }
+
+    public static FileIdAllocator open(Path path) throws IOException {
+        return open(path, DEFAULT_LEASE_SIZE);
+    }
+
+    /**
+     * Opens the allocator stored at {@code path}, creating it starting at id 1 if the file does
+     * not exist.
+     */
+    public static FileIdAllocator open(Path path, int leaseSize) throws IOException {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("Lease size must be positive: " + leaseSize);
+        }
+        Path absolute = path.toAbsolutePath();
+        long ceiling = 1;
+        if (Files.exists(absolute)) {
+            String text = new String(Files.readAllBytes(absolute), StandardCharsets.US_ASCII).trim();
+            try {
+                ceiling = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt id file " + absolute + ": " + e.getMessage(), e);
+            }
+            if (ceiling < 1 || ceiling > Integer.MAX_VALUE + 1L) {
+                throw new IOException("Corrupt id file " + absolute + ": ceiling " + ceiling);
+            }
+        }
+        return new FileIdAllocator(absolute, leaseSize, ceiling);
+    }
+
+    /**
+     * @throws UncheckedIOException if a new lease had to be written and could not be
+     */
+    @Override
+    public int next() {
+        return reserve(1);
+    }
+
+    /**
+     * @throws UncheckedIOException if a new lease had to be written and could not be
+     */
+    @Override
+    public int reserve(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Cannot reserve " + count + " ids");
+        }
+        long first = next.getAndAdd(count);
+        long end = first + count;
+        if (end - 1 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Ids exhausted in " + path);
+        }
+        if (end > ceiling) {
+            extendTo(end);
+        }
+        return (int) first;
+    }
+
+    /**
+     * @throws UncheckedIOException if a new lease had to be written and could not be
+     */
+    @Override
+    public void advancePast(int id) {
+        if (id >= next.get()) {
+            long end = next.accumulateAndGet(id + 1L, Math::max);
+            if (end > ceiling) {
+                extendTo(end);
+            }
+        }
+    }
+
+    // Moves the persisted ceiling to at least end, plus a lease so the next callers need no I/O.
+    private synchronized void extendTo(long end) {
+        if (end <= ceiling) {
+            return;
+        }
+        long newCeiling = end + Math.min(leaseSize, Integer.MAX_VALUE + 1L - end);
+        try {
+            write(newCeiling);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write id file " + path, e);
+        }
+        ceiling = newCeiling;
+    }
+
+    private void write(long newCeiling) throws IOException {
+        Path temporary = AtomicFiles.createTempFileFor(path);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap((newCeiling + "\n").getBytes(StandardCharsets.US_ASCII));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
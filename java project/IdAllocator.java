@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids for new products, transactions or users. Every implementation is safe to call
+ * from several threads at once and never returns the same id twice; ids are increasing but may
+ * have gaps. Once {@link Integer#MAX_VALUE} has been handed out, or advanced past, the ids are
+ * exhausted and every later request throws IllegalStateException. {@link InMemory} starts again
+ * at 1 in every run, {@link FileIdAllocator} carries on where the previous run stopped.
+ */
+interface IdAllocator {
+    /**
+     * Returns a new id.
+     */
+    int next();
+
+    /**
+     * Reserves {@code count} consecutive ids and returns the first. Bulk imports take a block per
+     * batch this way and number its rows themselves, instead of going back to the allocator for
+     * every row.
+     */
+    int reserve(int count);
+
+    /**
+     * Makes sure {@code id} and every id below it are never handed out, e.g. because an object
+     * with that id was read back from storage.
+     */
+    void advancePast(int id);
+
+    /**
+     * A counter in memory, for when ids do not need to survive a restart.
+     */
+    class InMemory implements IdAllocator {
+        // A long, so the id after Integer.MAX_VALUE can be counted to and seen as exhaustion.
+        private final AtomicLong next;
+
+        public InMemory() {
+            this(1);
+        }
+
+        public InMemory(int first) {
+            this.next = new AtomicLong(first);
+        }
+
+        @Override
+        public int next() {
+            return reserve(1);
+        }
+
+        @Override
+        public int reserve(int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Cannot reserve " + count + " ids");
+            }
+            long first = next.getAndAdd(count);
+            if (first < 0 || first + count - 1 > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Ids exhausted");
+            }
+            return (int) first;
+        }
+
+        @Override
+        public void advancePast(int id) {
+            // Checked first because objects loaded in id order would otherwise all write the counter.
+            if (id >= next.get()) {
+                next.accumulateAndGet(id + 1L, Math::max);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Open-addressing set of product ids with linear probing. Memory follows the number of ids
+ * held, not their values, so one id near {@link Integer#MAX_VALUE} costs the same as id 1. Not
+ * thread-safe.
+ */
+class IdSet {
+    // Marks an empty slot; the id itself is tracked by containsEmpty instead.
+    private static final int EMPTY = 0;
+
+    private int[] keys = new int[16];
+    private int size;
+    private boolean containsEmpty;
+
+    /**
+     * Adds the id and returns whether it was not already in the set.
+     */
+    public boolean add(int id) {
+        if (id == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(int id) {
+        if (id == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(id, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size + (containsEmpty ? 1 : 0);
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        keys = new int[capacity];
+        int mask = capacity - 1;
+        for (int id : oldKeys) {
+            if (id != EMPTY) {
+                int slot = slot(id, mask);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = id;
+            }
+        }
+    }
+
+    private static int slot(int id, int mask) {
+        return (id * 0x9E3779B9 >>> 16 ^ id * 0x9E3779B9) & mask;
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An inventory text file ({@code id,name,quantity,price,category} per line) that is saved
+ * incrementally. The first save writes every product. Later saves write only the products changed
+ * since then, as upserts and removals in a delta file next to it ({@code inventory.txt.delta}),
+ * until the delta grows past a quarter of the catalogue and the next save rewrites the whole file
+ * and drops the delta.
+ *
+ * Both files are written to a temporary file and renamed into place, so a crash leaves the old
+ * version, never half of a new one. The delta's first line holds a checksum of the file it
+ * applies to; a delta left behind by a crash just after the full file was rewritten no longer
+ * matches and is ignored. Readers apply the delta with {@link #readDelta(Path)}.
+ *
+ * Rows are read from a {@link VersionedInventoryStore.Snapshot} taken as the save starts, so
+ * the file holds the inventory at one moment even while sales go on during the save.
+ */
+class IncrementalInventoryFile {
+    static final String DELTA_SUFFIX = ".delta";
+    private static final String DELTA_HEADER = "# inventory delta, base crc32c=";
+    private static final int MIN_COMPACTION_CHANGES = 1_024;
+    private static final int COMPACTION_DIVISOR = 4;
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    interface Progress {
+        /**
+         * Called every few thousand rows with how many have been written and how many there are.
+         */
+        void onProgress(long written, long total);
+
+        boolean isCancelled();
+    }
+
+    private final Path path;
+    private final Path deltaPath;
+    private final ChangeTrackingInventoryStore store;
+    private final VersionedInventoryStore versions;
+    // Checksum of the full file as this object last wrote it; -1 until then.
+    private long baseChecksum = -1;
+
+    /**
+     * @param store tracks which products changed since the last save
+     * @param versions the store (wrapped by {@code store} or wrapping it) that rows are read from
+     */
+    public IncrementalInventoryFile(Path path, ChangeTrackingInventoryStore store, VersionedInventoryStore versions) {
+        this.path = path.toAbsolutePath();
+        this.deltaPath = deltaPath(this.path);
+        this.store = store;
+        this.versions = versions;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the changes since the last save to the delta file, or the whole inventory if this is
+     * the first save or the delta has grown too big.
+     *
+     * @param progress told how a full rewrite is going, and asked whether to stop; may be null
+     * @return how many rows were written: changed products for a delta, all of them otherwise
+     * @throws CancellationException if {@code progress} asked to cancel; both files are left as they were
+     */
+    public synchronized long save(Progress progress) throws IOException {
+        int changes = store.getChangedCount();
+        if (baseChecksum < 0 || changes > Math.max(MIN_COMPACTION_CHANGES, store.size() / COMPACTION_DIVISOR)) {
+            return saveFull(progress);
+        }
+        return saveDelta(store.getChangedIds());
+    }
+
+    private long saveFull(Progress progress) throws IOException {
+        // Changes made between the reset and the snapshot are in both, and are written again next time.
+        Set<Integer> changed = store.resetChanges();
+        boolean saved = false;
+        try (VersionedInventoryStore.Snapshot snapshot = versions.openSnapshot()) {
+            long total = snapshot.size();
+            long written = 0;
+            CRC32C checksum = new CRC32C();
+            Path temporary = AtomicFiles.createTempFileFor(path);
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    OutputStream out = new CheckedOutputStream(Channels.newOutputStream(channel), checksum);
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    ProductCursor product = snapshot.cursor();
+                    while (product.next()) {
+                        writeRow(writer, product.getProductId(), product.getProductName(), product.getQuantityInStock(),
+                                product.getPrice(), product.getCategory());
+                        if (++written % PROGRESS_INTERVAL == 0 && progress != null) {
+                            if (progress.isCancelled()) {
+                                throw new CancellationException("Inventory save cancelled");
+                            }
+                            progress.onProgress(written, total);
+                        }
+                    }
+                    writer.flush();
+                    channel.force(true);
+                }
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            // The old delta no longer matches the checksum; deleting it is only tidying up.
+            Files.deleteIfExists(deltaPath);
+            baseChecksum = checksum.getValue();
+            saved = true;
+            return written;
+        } finally {
+            if (!saved) {
+                store.restoreChanges(changed);
+            }
+        }
+    }
+
+    private long saveDelta(int[] productIds) throws IOException {
+        Path temporary = AtomicFiles.createTempFileFor(deltaPath);
+        try (VersionedInventoryStore.Snapshot snapshot = versions.openSnapshot()) {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                        StandardCharsets.UTF_8));
+                writer.write(DELTA_HEADER + Long.toHexString(baseChecksum) + "\n");
+                for (int productId : productIds) {
+                    Product product = snapshot.getProductById(productId);
+                    if (product == null) {
+                        writer.write("-" + productId + "\n");
+                    } else {
+                        writeRow(writer, productId, product.getProductName(), product.getQuantityInStock(),
+                                product.getPrice(), product.getCategory());
+                    }
+                }
+                writer.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, deltaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return productIds.length;
+    }
+
+    private static void writeRow(Writer writer, int productId, String productName, int quantityInStock, double price,
+                                 String category) throws IOException {
+        writer.write(productId + "," + productName + "," + quantityInStock + "," + price + "," + category + "\n");
+    }
+
+    static Path deltaPath(Path path) {
+        Path absolute = path.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + DELTA_SUFFIX);
+    }
+
+    /**
+     * Reads the delta saved next to {@code path}. Returns an empty delta if there is none or if
+     * it belongs to an earlier version of the file.
+     */
+    public static Delta readDelta(Path path) throws IOException {
+        Path deltaPath = deltaPath(path);
+        if (!Files.exists(deltaPath)) {
+            return Delta.EMPTY;
+        }
+        Map<Integer, Row> rows = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(deltaPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(DELTA_HEADER)) {
+                throw new IOException("Not an inventory delta: " + deltaPath);
+            }
+            long expected;
+            try {
+                expected = Long.parseLong(header.substring(DELTA_HEADER.length()).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt inventory delta header in " + deltaPath, e);
+            }
+            if (expected != checksum(path)) {
+                return Delta.EMPTY;
+            }
+            String line;
+            long lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                try {
+                    if (line.startsWith("-")) {
+                        rows.put(Integer.parseInt(line.substring(1).trim()), null);
+                        continue;
+                    }
+                    String[] parts = line.split(",", -1);
+                    if (parts.length != 5) {
+                        throw new IllegalArgumentException("expected 5 fields but found " + parts.length);
+                    }
+                    int productId = Integer.parseInt(parts[0]);
+                    rows.put(productId, new Row(parts[1], Integer.parseInt(parts[2]), Double.parseDouble(parts[3]),
+                            parts[4]));
+                } catch (IllegalArgumentException e) {
+                    // Deltas are only ever written whole, so a bad line means the file was damaged.
+                    throw new IOException("Corrupt inventory delta " + deltaPath + " at line " + lineNumber + ": "
+                            + e.getMessage(), e);
+                }
+            }
+        }
+        return new Delta(rows);
+    }
+
+    private static long checksum(Path path) throws IOException {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private static class Row {
+        private final String productName;
+        private final int quantityInStock;
+        private final double price;
+        private final String category;
+
+        private Row(String productName, int quantityInStock, double price, String category) {
+            this.productName = productName;
+            this.quantityInStock = quantityInStock;
+            this.price = price;
+            this.category = category;
+        }
+    }
+
+    /**
+     * The changes saved in a delta file, to be applied while reading the full file: pass the rows
+     * read from it through {@link #filter}, then hand {@link #forEachAdded} the same handler for
+     * the products that are only in the delta.
+     */
+    static class Delta {
+        static final Delta EMPTY = new Delta(new LinkedHashMap<>());
+
+        // A null row means the product was removed.
+        private final Map<Integer, Row> rows;
+        private final Set<Integer> seen = new HashSet<>();
+
+        private Delta(Map<Integer, Row> rows) {
+            this.rows = rows;
+        }
+
+        public boolean isEmpty() {
+            return rows.isEmpty();
+        }
+
+        public int size() {
+            return rows.size();
+        }
+
+        /**
+         * Wraps {@code handler} so rows of the full file that the delta changed arrive changed and
+         * rows it removed are dropped. Not thread-safe: feed it rows from one thread at a time.
+         */
+        public InventoryFileReader.RowHandler filter(InventoryFileReader.RowHandler handler) {
+            if (rows.isEmpty()) {
+                return handler;
+            }
+            return (productId, productName, quantityInStock, price, category) -> {
+                if (!rows.containsKey(productId)) {
+                    handler.onRow(productId, productName, quantityInStock, price, category);
+                    return;
+                }
+                seen.add(productId);
+                Row row = rows.get(productId);
+                if (row != null) {
+                    handler.onRow(productId, row.productName, row.quantityInStock, row.price, row.category);
+                }
+            };
+        }
+
+        /**
+         * Hands {@code handler} the products the delta added, i.e. those {@link #filter} has not
+         * seen in the full file.
+         */
+        public void forEachAdded(InventoryFileReader.RowHandler handler) {
+            for (Map.Entry<Integer, Row> entry : rows.entrySet()) {
+                Row row = entry.getValue();
+                if (row != null && !seen.contains(entry.getKey())) {
+                    handler.onRow(entry.getKey(), row.productName, row.quantityInStock, row.price, row.category);
+                }
+            }
+        }
+    }
+}
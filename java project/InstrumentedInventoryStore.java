@@ -0,0 +1,127 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Wraps another {@link InventoryStore} and times its lookups into {@link Metrics}. Everything else
+ * is passed straight through.
+ */
+class InstrumentedInventoryStore implements InventoryStore {
+    private final InventoryStore store;
+    private final Metrics.Timer lookupById;
+    private final Metrics.Timer lookupByName;
+    private final Metrics.Timer lookupByCategory;
+    private final Metrics.Counter lookupMisses;
+
+    public InstrumentedInventoryStore(InventoryStore store, Metrics metrics) {
+        this.store = store;
+        this.lookupById = metrics.timer("inventory_lookup_by_id_seconds", "Time to look up a product by id");
+        this.lookupByName = metrics.timer("inventory_lookup_by_name_seconds", "Time to look up products by name");
+        this.lookupByCategory = metrics.timer("inventory_lookup_by_category_seconds",
+                "Time to list the products in a category");
+        this.lookupMisses = metrics.counter("inventory_lookup_misses_total",
+                "Lookups by id or name that found no product");
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        store.addProduct(product);
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        store.addProducts(products);
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        store.updateProduct(product);
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        store.updateQuantityInStock(productId, quantityInStock);
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        return store.adjustQuantityInStock(productId, delta);
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        return store.computeQuantityInStock(productId, update);
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        store.removeProduct(productId);
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        long started = System.nanoTime();
+        Product product = store.getProductById(productId);
+        lookupById.recordSince(started);
+        if (product == null) {
+            lookupMisses.increment();
+        }
+        return product;
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return store.getAllProducts();
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        long started = System.nanoTime();
+        Product product = store.getProductByName(productName);
+        lookupByName.recordSince(started);
+        if (product == null) {
+            lookupMisses.increment();
+        }
+        return product;
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        long started = System.nanoTime();
+        List<Product> products = store.getProductsByName(productName);
+        lookupByName.recordSince(started);
+        if (products.isEmpty()) {
+            lookupMisses.increment();
+        }
+        return products;
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        long started = System.nanoTime();
+        List<Product> products = store.getProductsByCategory(category);
+        lookupByCategory.recordSince(started);
+        return products;
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return store.getCategories();
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        return store.getCategoryStats(category);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ProductCursor cursor() {
+        return store.cursor();
+    }
+}
@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Streams an inventory file ({@code id,name,quantity,price,category} per line) through a fixed
+ * read buffer and hands each row to a {@link RowHandler}. Lines are scanned byte by byte instead of
+ * being split with a regex, so only the name and category strings are allocated per row and the
+ * file is never held in memory as a whole. Rows that cannot be parsed are skipped and reported in
+ * the returned {@link LoadReport} with their line numbers.
+ */
+class InventoryFileReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Parallel reads split the file into about this many chunks per worker, but never into
+    // chunks smaller than MIN_CHUNK_SIZE.
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int FIELD_COUNT = 5;
+    // Every power of ten up to 1e22 is exactly representable as a double.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    interface RowHandler {
+        void onRow(int productId, String productName, int quantityInStock, double price, String category);
+    }
+
+    interface BatchHandler {
+        void onBatch(RowBatch rows);
+    }
+
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+
+    public LoadReport read(Path path, RowHandler handler) throws IOException {
+        LoadReport report = new LoadReport();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readRange(channel, 0, Long.MAX_VALUE, handler, report);
+        }
+        return report;
+    }
+
+    /**
+     * Parses the file on {@code pool} in chunks split on line boundaries and hands the parsed rows
+     * to {@code handler} one chunk at a time, on the calling thread and in file order, so whatever
+     * the handler does (such as numbering new products) does not depend on thread scheduling.
+     * Only a bounded number of chunks is parsed ahead of the handler. Files too small to be worth
+     * splitting are read as a single chunk.
+     */
+    public static LoadReport readParallel(Path path, ForkJoinPool pool, BatchHandler handler) throws IOException {
+        LoadReport report = new LoadReport();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int parallelism = pool.getParallelism();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD) + 1);
+            int chunkCount = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            int window = parallelism * 2;
+
+            List<ForkJoinTask<Chunk>> inFlight = new ArrayList<>();
+            int submitted = 0;
+            long linesBefore = 0;
+            try {
+                for (int merged = 0; merged < chunkCount; merged++) {
+                    while (submitted < chunkCount && submitted - merged < window) {
+                        long start = submitted * chunkSize;
+                        long end = Math.min(size, start + chunkSize);
+                        if (submitted == chunkCount - 1) {
+                            end = Long.MAX_VALUE;
+                        }
+                        long chunkEnd = end;
+                        inFlight.add(pool.submit(() -> parseChunk(channel, start, chunkEnd)));
+                        submitted++;
+                    }
+                    Chunk chunk = inFlight.set(merged, null).join();
+                    report.merge(chunk.report, linesBefore);
+                    linesBefore += chunk.lines;
+                    if (chunk.rows.size() > 0) {
+                        handler.onBatch(chunk.rows);
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (ForkJoinTask<Chunk> task : inFlight) {
+                    if (task != null) {
+                        task.cancel(true);
+                    }
+                }
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return report;
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        Chunk chunk = new Chunk();
+        chunk.lines = new InventoryFileReader().readRange(channel, start, end, chunk.rows, chunk.report);
+        return chunk;
+    }
+
+    // Parses every line that starts at an offset in [start, end) and returns how many lines that
+    // was. A line that starts before the range belongs to the previous chunk, so when start is not
+    // the beginning of the file, reading begins one byte early and the first line is skipped.
+    private long readRange(FileChannel channel, long start, long end, RowHandler handler, LoadReport report)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long position = start > 0 ? start - 1 : 0;
+        // File offset of buffer[0].
+        long bufferOffset = position;
+        boolean skipping = start > 0;
+        int filled = 0;
+        long lineNumber = 0;
+        boolean done = false;
+        while (!done) {
+            int read = channel.read(byteBuffer, position);
+            boolean endOfFile = read < 0;
+            if (!endOfFile) {
+                filled += read;
+                position += read;
+            }
+
+            int lineStart = 0;
+            for (int i = 0; i < filled && !done; i++) {
+                if (buffer[i] == '\n') {
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        parseLine(buffer, lineStart, i, ++lineNumber, handler, report);
+                    }
+                    lineStart = i + 1;
+                    done = bufferOffset + lineStart >= end;
+                }
+            }
+            if (endOfFile && !done) {
+                if (!skipping && lineStart < filled) {
+                    parseLine(buffer, lineStart, filled, ++lineNumber, handler, report);
+                }
+                done = true;
+            }
+
+            // Carry the unfinished line over to the front of the buffer, growing the buffer
+            // when a single line does not fit.
+            int remaining = filled - lineStart;
+            if (lineStart == 0 && remaining == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                byteBuffer = ByteBuffer.wrap(buffer);
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+            }
+            bufferOffset += lineStart;
+            filled = remaining;
+            byteBuffer.clear().position(filled);
+        }
+        return lineNumber;
+    }
+
+    private void parseLine(byte[] line, int start, int end, long lineNumber, RowHandler handler, LoadReport report) {
+        if (end > start && line[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+
+        int fields = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || line[i] == ',') {
+                if (fields == FIELD_COUNT) {
+                    report.reject(lineNumber, "expected " + FIELD_COUNT + " fields but found more");
+                    return;
+                }
+                fieldStarts[fields] = fieldStart;
+                fieldEnds[fields] = i;
+                fields++;
+                fieldStart = i + 1;
+            }
+        }
+        if (fields < FIELD_COUNT) {
+            report.reject(lineNumber, "expected " + FIELD_COUNT + " fields but found " + fields);
+            return;
+        }
+
+        try {
+            int productId = parseInt(line, fieldStarts[0], fieldEnds[0], "product id");
+            String productName = new String(line, fieldStarts[1], fieldEnds[1] - fieldStarts[1], StandardCharsets.UTF_8);
+            int quantityInStock = parseInt(line, fieldStarts[2], fieldEnds[2], "quantity");
+            double price = parseDouble(line, fieldStarts[3], fieldEnds[3]);
+            String category = new String(line, fieldStarts[4], fieldEnds[4] - fieldStarts[4], StandardCharsets.UTF_8);
+            handler.onRow(productId, productName, quantityInStock, price, category);
+            report.accept();
+        } catch (NumberFormatException e) {
+            report.reject(lineNumber, e.getMessage());
+        }
+    }
+
+    private static int parseInt(byte[] bytes, int start, int end, String field) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("invalid " + field + ": \"" + text(bytes, start, end) + "\"");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("invalid " + field + ": \"" + text(bytes, start, end) + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException(field + " out of range: \"" + text(bytes, start, end) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(field + " out of range: \"" + text(bytes, start, end) + "\"");
+        }
+        return (int) value;
+    }
+
+    // Plain decimals with up to 15 significant digits (what saveInventoryToFile writes for ordinary
+    // prices) are converted exactly without allocating. Anything else, such as exponents, goes
+    // through Double.parseDouble.
+    private static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean simple = true;
+        for (; i < end && simple; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                seenDigit = true;
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && seenDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(text(bytes, start, end));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("invalid price: \"" + text(bytes, start, end) + "\"");
+        }
+    }
+
+    private static String text(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rows parsed from one chunk of a file, held column by column.
+     */
+    static class RowBatch implements RowHandler {
+        private int[] productIds = new int[1024];
+        private String[] productNames = new String[1024];
+        private int[] quantities = new int[1024];
+        private double[] prices = new double[1024];
+        private String[] categories = new String[1024];
+        private int size;
+
+        @Override
+        public void onRow(int productId, String productName, int quantityInStock, double price, String category) {
+            if (size == productIds.length) {
+                int capacity = size * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                productNames = Arrays.copyOf(productNames, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+            }
+            productIds[size] = productId;
+            productNames[size] = productName;
+            quantities[size] = quantityInStock;
+            prices[size] = price;
+            categories[size] = category;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void forEach(RowHandler handler) {
+            for (int i = 0; i < size; i++) {
+                handler.onRow(productIds[i], productNames[i], quantities[i], prices[i], categories[i]);
+            }
+        }
+    }
+
+    private static class Chunk {
+        private final RowBatch rows = new RowBatch();
+        private final LoadReport report = new LoadReport();
+        private long lines;
+    }
+}
@@ -1,44 +1,72 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.FileWriter;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 public class InventoryManagementSystemGUI extends JFrame {
-    private InventoryManager inventoryManager;
-    private List<Transaction> transactions;
+    private InventoryStore inventoryManager;
+    private TransactionLog transactions;
+    private StockAlerts stockAlerts;
+    private ProductSearchIndex searchIndex;
+    private ChangeTrackingInventoryStore changeTracker;
+    private VersionedInventoryStore versions;
+    // The text file last saved to, which later saves to it update incrementally.
+    private IncrementalInventoryFile inventoryFile;
     private SalesReportGenerator salesReportGenerator;
-    private List<User> users;
-    private User currentUser;
+    private UserStore users;
+    // Token of the logged-in user's session, or null when nobody is logged in.
+    private String sessionToken;
 
-    private JTextArea displayArea;
+    private InventoryTableModel inventoryTableModel;
+    private JTable inventoryTable;
+
+    // How many suggestions the product picker shows
+    private static final int SUGGESTION_LIMIT = 10;
 
     public InventoryManagementSystemGUI() {
-        this.inventoryManager = new InventoryManager();
-        this.transactions = new ArrayList<>();
-        this.salesReportGenerator = new SalesReportGenerator(transactions);
-        this.users = new ArrayList<>();
+        InventoryManager store = new InventoryManager();
+        this.stockAlerts = new StockAlerts(store);
+        this.versions = new VersionedInventoryStore(store);
+        InventoryStore alerting = new AlertingInventoryStore(versions, stockAlerts);
+        this.searchIndex = new ProductSearchIndex(alerting);
+        this.changeTracker = new ChangeTrackingInventoryStore(new SearchableInventoryStore(alerting, searchIndex));
+        this.inventoryManager = changeTracker;
+        this.transactions = new TransactionLog();
+        this.salesReportGenerator = new SalesReportGenerator(transactions, inventoryManager);
+        this.users = new UserStore();
 
         // Example: Adding a user
         User adminUser = new User("admin", "admin123", UserRole.ADMIN);
         User adminUser1 = new User("Iheb", "javajava", UserRole.ADMIN);
         User adminUser2 = new User("Dorra", "poyo", UserRole.ADMIN);
         User adminUser3 = new User("Tbs", "2023", UserRole.ADMIN);
-        users.add(adminUser);
-        users.add(adminUser1);
-        users.add(adminUser2);
-        users.add(adminUser3);
+        users.addUser(adminUser);
+        users.addUser(adminUser1);
+        users.addUser(adminUser2);
+        users.addUser(adminUser3);
 
         // GUI components
         setTitle("Inventory Management System");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(600, 400);
+        setSize(800, 600);
 
         JButton loginButton = new JButton("Login");
         JButton logoutButton = new JButton("Logout");
@@ -46,11 +74,18 @@ public class InventoryManagementSystemGUI extends JFrame {
         JButton generateReportButton = new JButton("Generate Sales Report");
         JButton addProductButton = new JButton("Add Product");
         JButton recordTransactionButton = new JButton("Record Transaction");
+        JButton importTransactionsButton = new JButton("Record Transactions from File");
+        JButton thresholdButton = new JButton("Set Reorder Threshold");
+        JLabel alertLabel = new JLabel(" ");
         JButton saveToFileButton = new JButton("Save Inventory to File");
         JButton loadFromFileButton = new JButton("Load Inventory from File");
 
-        displayArea = new JTextArea();
-        displayArea.setEditable(false);
+        inventoryTableModel = new InventoryTableModel(inventoryManager);
+        inventoryTable = new JTable(inventoryTableModel);
+        inventoryTable.setFillsViewportHeight(true);
+        JTextField nameFilterField = new JTextField(15);
+        JComboBox<String> categoryFilterBox = new JComboBox<>(new String[]{""});
+        JButton filterButton = new JButton("Filter");
 
         JTextField usernameField = new JTextField();
         JPasswordField passwordField = new JPasswordField();
@@ -71,12 +106,29 @@ public class InventoryManagementSystemGUI extends JFrame {
         buttonPanel.add(generateReportButton);
         buttonPanel.add(addProductButton);
         buttonPanel.add(recordTransactionButton);
+        buttonPanel.add(importTransactionsButton);
+        buttonPanel.add(thresholdButton);
         buttonPanel.add(saveToFileButton);
         buttonPanel.add(loadFromFileButton);
 
-        add(loginPanel, BorderLayout.NORTH);
-        add(buttonPanel, BorderLayout.CENTER);
-        add(new JScrollPane(displayArea), BorderLayout.SOUTH);
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Name contains:"));
+        filterPanel.add(nameFilterField);
+        filterPanel.add(new JLabel("Category:"));
+        filterPanel.add(categoryFilterBox);
+        filterPanel.add(filterButton);
+
+        JPanel controlPanel = new JPanel(new BorderLayout());
+        controlPanel.add(loginPanel, BorderLayout.NORTH);
+        controlPanel.add(buttonPanel, BorderLayout.CENTER);
+        controlPanel.add(filterPanel, BorderLayout.SOUTH);
+
+        add(controlPanel, BorderLayout.NORTH);
+        add(new JScrollPane(inventoryTable), BorderLayout.CENTER);
+        add(alertLabel, BorderLayout.SOUTH);
+
+        // Alerts arrive on the dispatcher thread; show the latest one in the status line
+        stockAlerts.addListener(alert -> SwingUtilities.invokeLater(() -> alertLabel.setText(alert.toString())));
 
         // Event listeners
         loginButton.addActionListener(new ActionListener() {
@@ -102,6 +154,54 @@ public class InventoryManagementSystemGUI extends JFrame {
             }
         });
 
+        ActionListener applyFilter = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                InventoryTableModel.Rows rows = inventoryTableModel.getRows();
+                loadInventoryRows(nameFilterField.getText(), (String) categoryFilterBox.getSelectedItem(),
+                        rows.getSortColumn(), rows.isAscending());
+            }
+        };
+        filterButton.addActionListener(applyFilter);
+        nameFilterField.addActionListener(applyFilter);
+
+        // Refresh the category choices whenever the list is opened
+        categoryFilterBox.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                Object selected = categoryFilterBox.getSelectedItem();
+                categoryFilterBox.removeAllItems();
+                categoryFilterBox.addItem("");
+                for (String category : new TreeSet<>(inventoryManager.getCategories())) {
+                    categoryFilterBox.addItem(category);
+                }
+                categoryFilterBox.setSelectedItem(selected);
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
+        });
+
+        // Sorting is done by the model over product ids, not by a row sorter that would read every cell
+        inventoryTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = inventoryTable.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    int sortColumn = inventoryTable.convertColumnIndexToModel(column);
+                    InventoryTableModel.Rows rows = inventoryTableModel.getRows();
+                    // Ascending the first time a column is chosen, then flip on each click
+                    boolean ascending = sortColumn != rows.getSortColumn() || !rows.isAscending();
+                    loadInventoryRows(rows.getNameFilter(), rows.getCategoryFilter(), sortColumn, ascending);
+                }
+            }
+        });
+
         generateReportButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -112,7 +212,7 @@ public class InventoryManagementSystemGUI extends JFrame {
         addProductButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentUser != null && currentUser.getRole() == UserRole.ADMIN) {
+                if (isAdmin()) {
                     addProduct();
                 } else {
                     JOptionPane.showMessageDialog(null, "Admin privileges required.");
@@ -123,7 +223,7 @@ public class InventoryManagementSystemGUI extends JFrame {
         recordTransactionButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentUser != null) {
+                if (isLoggedIn()) {
                     recordTransaction();
                 } else {
                     JOptionPane.showMessageDialog(null, "Login required.");
@@ -131,10 +231,32 @@ public class InventoryManagementSystemGUI extends JFrame {
             }
         });
 
+        thresholdButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (isAdmin()) {
+                    setReorderThreshold();
+                } else {
+                    JOptionPane.showMessageDialog(null, "Admin privileges required.");
+                }
+            }
+        });
+
+        importTransactionsButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (isLoggedIn()) {
+                    recordTransactionsFromFile();
+                } else {
+                    JOptionPane.showMessageDialog(null, "Login required.");
+                }
+            }
+        });
+
         saveToFileButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentUser != null && currentUser.getRole() == UserRole.ADMIN) {
+                if (isAdmin()) {
                     saveInventoryToFile();
                 } else {
                     JOptionPane.showMessageDialog(null, "Admin privileges required.");
@@ -145,7 +267,7 @@ public class InventoryManagementSystemGUI extends JFrame {
         loadFromFileButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentUser != null && currentUser.getRole() == UserRole.ADMIN) {
+                if (isAdmin()) {
                     loadInventoryFromFile();
                 } else {
                     JOptionPane.showMessageDialog(null, "Admin privileges required.");
@@ -157,61 +279,135 @@ public class InventoryManagementSystemGUI extends JFrame {
     }
 
     private void loginUser(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                currentUser = user;
-                JOptionPane.showMessageDialog(null, "Login successful.");
-                return;
-            }
+        users.logout(sessionToken);
+        sessionToken = users.login(username, password);
+        if (sessionToken != null) {
+            JOptionPane.showMessageDialog(null, "Login successful.");
+            return;
         }
         JOptionPane.showMessageDialog(null, "Login failed. Invalid username or password.");
     }
 
     private void logoutUser() {
-        currentUser = null;
+        users.logout(sessionToken);
+        sessionToken = null;
         JOptionPane.showMessageDialog(null, "Logout successful.");
     }
 
+    // The password was checked at login; each action only looks up the session.
+    private User currentUser() {
+        return users.getSessionUser(sessionToken);
+    }
+
+    private boolean isLoggedIn() {
+        return currentUser() != null;
+    }
+
+    private boolean isAdmin() {
+        User user = currentUser();
+        return user != null && user.getRole() == UserRole.ADMIN;
+    }
+
     private void displayInventory() {
-        List<Product> products = inventoryManager.getAllProducts();
-        displayArea.setText("Inventory:\n");
-        for (Product product : products) {
-            displayArea.append("Product ID: " + product.getProductId() + "\n");
-            displayArea.append("Product Name: " + product.getProductName() + "\n");
-            displayArea.append("Quantity in Stock: " + product.getQuantityInStock() + "\n");
-            displayArea.append("Price: " + product.getPrice() + "\n");
-            displayArea.append("Category: " + product.getCategory() + "\n");
-            displayArea.append("------------------------------\n");
-        }
+        InventoryTableModel.Rows rows = inventoryTableModel.getRows();
+        loadInventoryRows(rows.getNameFilter(), rows.getCategoryFilter(), rows.getSortColumn(), rows.isAscending());
+    }
+
+    /**
+     * Builds the table's row list on a worker thread and swaps it in when ready, so listing,
+     * filtering and sorting a large catalogue leave the window responsive.
+     */
+    private void loadInventoryRows(String nameFilter, String categoryFilter, int sortColumn, boolean ascending) {
+        new BackgroundTask<InventoryTableModel.Rows, Void>(this, "Listing inventory") {
+            @Override
+            protected InventoryTableModel.Rows compute() {
+                return InventoryTableModel.Rows.load(inventoryManager, nameFilter, categoryFilter, sortColumn, ascending);
+            }
+
+            @Override
+            protected void onSuccess(InventoryTableModel.Rows rows) {
+                inventoryTableModel.setRows(rows);
+                for (int i = 0; i < inventoryTable.getColumnCount(); i++) {
+                    inventoryTable.getColumnModel().getColumn(i).setHeaderValue(
+                            inventoryTableModel.getColumnName(inventoryTable.convertColumnIndexToModel(i)));
+                }
+                inventoryTable.getTableHeader().repaint();
+            }
+
+            @Override
+            protected void onCancelled() {
+            }
+        }.start();
     }
 
     private void generateSalesReport() {
-        StringBuilder reportText = new StringBuilder("Sales Report:\n");
-        for (Transaction transaction : transactions) {
-            reportText.append("Transaction ID: ").append(transaction.getTransactionId()).append("\n");
-            reportText.append("Product: ").append(transaction.getProduct().getProductName()).append("\n");
-            reportText.append("Quantity: ").append(transaction.getQuantity()).append("\n");
-            reportText.append("Date: ").append(transaction.getDate()).append("\n");
-            reportText.append("Transaction Type: ").append(transaction.getType()).append("\n");
-            reportText.append("------------------------------\n");
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = parseOptionalDate(JOptionPane.showInputDialog("Export transactions from (yyyy-mm-dd, blank for all):"));
+            to = parseOptionalDate(JOptionPane.showInputDialog("Export transactions to (yyyy-mm-dd, blank for all):"));
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(null, "Invalid date: " + e.getParsedString());
+            return;
         }
 
-        // Show the report in a dialog
-        JOptionPane.showMessageDialog(null, reportText.toString());
+        new BackgroundTask<String, Void>(this, "Building sales report") {
+            @Override
+            protected String compute() {
+                return salesReportGenerator.buildSalesReport();
+            }
+
+            @Override
+            protected void onSuccess(String report) {
+                // Show the summary, which comes from running totals and stays small
+                JOptionPane.showMessageDialog(null, report);
 
-        // Save the report to a file
-        saveSalesReportToFile(reportText.toString(), "C:/Users/Iheb/Desktop/java project/sales_report.txt");
+                // Save the full transaction listing to a file
+                exportSalesReport("C:/Users/Iheb/Desktop/java project/sales_report.txt",
+                        SalesReportExporter.Range.between(from, to));
+            }
+        }.start();
     }
 
-    private void saveSalesReportToFile(String reportText, String filePath) {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            writer.write(reportText);
-            JOptionPane.showMessageDialog(null, "Sales report saved to file: " + filePath);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving sales report to file: " + e.getMessage());
-        }
+    private static LocalDate parseOptionalDate(String text) {
+        return text == null || text.isBlank() ? null : LocalDate.parse(text.trim());
     }
 
+    /**
+     * Streams the transaction listing to {@code filePath} on a background thread. Cancelling
+     * leaves any earlier report in place.
+     */
+    private void exportSalesReport(String filePath, SalesReportExporter.Range range) {
+        new BackgroundTask<Long, Void>(this, "Exporting sales report") {
+            @Override
+            protected Long compute() throws IOException {
+                BackgroundTask<Long, Void> task = this;
+                return new SalesReportExporter().export(transactions, Paths.get(filePath), range,
+                        new SalesReportExporter.Progress() {
+                            @Override
+                            public void onProgress(long scanned, long total, long written) {
+                                reportProgress(scanned, total);
+                            }
+
+                            @Override
+                            public boolean isCancelled() {
+                                return task.isCancelled();
+                            }
+                        });
+            }
+
+            @Override
+            protected void onSuccess(Long written) {
+                JOptionPane.showMessageDialog(null, "Sales report saved to file: " + filePath
+                        + " (" + written + " transactions)");
+            }
+
+            @Override
+            protected void onFailure(Throwable cause) {
+                JOptionPane.showMessageDialog(null, "Error saving sales report to file: " + cause.getMessage());
+            }
+        }.start();
+    }
 
     private void addProduct() {
         String productName = JOptionPane.showInputDialog("Enter product name:");
@@ -226,11 +422,8 @@ public class InventoryManagementSystemGUI extends JFrame {
     }
 
     private void recordTransaction() {
-        String productName = JOptionPane.showInputDialog("Enter product name:");
-        Product product = inventoryManager.getProductByName(productName);
-
+        Product product = chooseProduct();
         if (product == null) {
-            JOptionPane.showMessageDialog(null, "Product not found.");
             return;
         }
 
@@ -239,58 +432,383 @@ public class InventoryManagementSystemGUI extends JFrame {
                 "Enter transaction type (SALE or PURCHASE):").toUpperCase());
 
         Transaction transaction = new Transaction(product, quantity, LocalDate.now(), type);
-        transactions.add(transaction);
-        updateProductQuantity(product, quantity, type);
+        try {
+            updateProductQuantity(product, quantity, type);
+        } catch (IllegalArgumentException e) {
+            // The product was removed while the dialog was open.
+            JOptionPane.showMessageDialog(null, "Transaction not recorded: " + e.getMessage());
+            return;
+        }
+        transactions.append(transaction);
 
         JOptionPane.showMessageDialog(null, "Transaction recorded successfully.");
     }
 
+    /**
+     * Asks for a product with a search field whose suggestions update on every keystroke, so a
+     * partial or mistyped name still finds it. Returns null if the dialog is cancelled.
+     */
+    private Product chooseProduct() {
+        JTextField searchField = new JTextField(25);
+        DefaultListModel<Product> suggestions = new DefaultListModel<>();
+        JList<Product> suggestionList = new JList<>(suggestions);
+        suggestionList.setVisibleRowCount(SUGGESTION_LIMIT);
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        suggestionList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Product product = (Product) value;
+                String text = product.getProductName() + "  (" + product.getCategory() + ", #"
+                        + product.getProductId() + ", " + product.getQuantityInStock() + " in stock)";
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        // The index answers in well under a millisecond, so searching on the EDT is fine.
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            private void refresh() {
+                suggestions.clear();
+                for (Product product : searchIndex.search(searchField.getText(), SUGGESTION_LIMIT)) {
+                    suggestions.addElement(product);
+                }
+                if (!suggestions.isEmpty()) {
+                    suggestionList.setSelectedIndex(0);
+                }
+            }
+        });
+
+        // JOptionPane focuses its OK button; typing should go to the search field instead.
+        searchField.addHierarchyListener(event -> {
+            if (searchField.isShowing()) {
+                searchField.requestFocusInWindow();
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout(0, 5));
+        panel.add(searchField, BorderLayout.NORTH);
+        panel.add(new JScrollPane(suggestionList), BorderLayout.CENTER);
+        while (true) {
+            int choice = JOptionPane.showConfirmDialog(null, panel, "Find product",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) {
+                return null;
+            }
+            Product product = suggestionList.getSelectedValue();
+            if (product != null) {
+                return product;
+            }
+            JOptionPane.showMessageDialog(null, "Product not found.");
+        }
+    }
+
+    /**
+     * Records a file of transactions ({@code productId,quantity,type[,yyyy-mm-dd]} per line, today if
+     * the date is left out) as one batch on a worker thread. Lines that cannot be parsed and
+     * transactions the batch rejects are both listed afterwards.
+     */
+    private void recordTransactionsFromFile() {
+        String filePath = JOptionPane.showInputDialog("Enter file path:");
+        if (filePath == null) {
+            return;
+        }
+        new BackgroundTask<TransactionBatchReport, Void>(this, "Recording transactions") {
+            private final LoadReport parseReport = new LoadReport();
+
+            @Override
+            protected TransactionBatchReport compute() throws IOException {
+                List<Transaction> batch = new ArrayList<>();
+                LocalDate today = LocalDate.now();
+                try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
+                    String line;
+                    long lineNumber = 0;
+                    while ((line = reader.readLine()) != null) {
+                        lineNumber++;
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        String[] parts = line.split(",");
+                        try {
+                            if (parts.length < 3 || parts.length > 4) {
+                                throw new IllegalArgumentException("expected 3 or 4 fields but found " + parts.length);
+                            }
+                            int productId = Integer.parseInt(parts[0].trim());
+                            Product product = inventoryManager.getProductById(productId);
+                            if (product == null) {
+                                throw new IllegalArgumentException("unknown product " + productId);
+                            }
+                            int quantity = Integer.parseInt(parts[1].trim());
+                            TransactionType type = TransactionType.valueOf(parts[2].trim().toUpperCase());
+                            LocalDate date = parts.length == 4 ? LocalDate.parse(parts[3].trim()) : today;
+                            batch.add(new Transaction(product, quantity, date, type));
+                            parseReport.accept();
+                        } catch (IllegalArgumentException | DateTimeParseException ex) {
+                            parseReport.reject(lineNumber, ex.getMessage());
+                        }
+                        if (isCancelled()) {
+                            throw new CancellationException();
+                        }
+                    }
+                }
+                TransactionBatch validated = TransactionBatch.validate(batch);
+                validated.applyTo(inventoryManager);
+                transactions.appendAll(validated.getAccepted());
+                return validated.getReport();
+            }
+
+            @Override
+            protected void onSuccess(TransactionBatchReport report) {
+                StringBuilder message = new StringBuilder(report.getRecordedCount() + " transactions recorded.");
+                if (parseReport.hasErrors()) {
+                    message.append("\n").append(parseReport.getErrorCount()).append(" lines skipped:");
+                    for (String error : parseReport.getErrors().subList(0, Math.min(10, parseReport.getErrors().size()))) {
+                        message.append("\n").append(error);
+                    }
+                }
+                if (report.hasRejections()) {
+                    message.append("\n").append(report.getRejectedCount()).append(" transactions rejected:");
+                    for (String rejection : report.getRejections().subList(0, Math.min(10, report.getRejections().size()))) {
+                        message.append("\n").append(rejection);
+                    }
+                }
+                JOptionPane.showMessageDialog(null, message.toString());
+            }
+
+            @Override
+            protected void onFailure(Throwable cause) {
+                JOptionPane.showMessageDialog(null, "Error recording transactions from file: " + cause.getMessage());
+            }
+        }.start();
+    }
+
+    private void setReorderThreshold() {
+        String productName = JOptionPane.showInputDialog("Enter product name (leave blank to set a category threshold):");
+        if (productName == null) {
+            return;
+        }
+        if (productName.isBlank()) {
+            String category = JOptionPane.showInputDialog("Enter category:");
+            if (category == null || category.isBlank()) {
+                return;
+            }
+            int threshold = Integer.parseInt(JOptionPane.showInputDialog("Enter reorder threshold:"));
+            stockAlerts.setCategoryThreshold(category, threshold);
+            JOptionPane.showMessageDialog(null, "Reorder threshold set for category " + category + ".");
+            return;
+        }
+
+        Product product = inventoryManager.getProductByName(productName);
+        if (product == null) {
+            JOptionPane.showMessageDialog(null, "Product not found.");
+            return;
+        }
+        int threshold = Integer.parseInt(JOptionPane.showInputDialog("Enter reorder threshold:"));
+        stockAlerts.setProductThreshold(product.getProductId(), threshold);
+        JOptionPane.showMessageDialog(null, "Reorder threshold set for " + productName + ".");
+    }
+
     private void updateProductQuantity(Product product, int quantity, TransactionType type) {
-        int currentQuantity = product.getQuantityInStock();
         if (type == TransactionType.SALE) {
-            product.setQuantityInStock(currentQuantity - quantity);
+            inventoryManager.adjustQuantityInStock(product.getProductId(), -quantity);
         } else {
-            product.setQuantityInStock(currentQuantity + quantity);
+            inventoryManager.adjustQuantityInStock(product.getProductId(), quantity);
         }
     }
 
     private void saveInventoryToFile() {
         String filePath = JOptionPane.showInputDialog("Enter file path:");
-        try (FileWriter writer = new FileWriter(filePath)) {
-            List<Product> products = inventoryManager.getAllProducts();
-            for (Product product : products) {
-                writer.write(
-                        product.getProductId() + ","
-                                + product.getProductName() + ","
-                                + product.getQuantityInStock() + ","
-                                + product.getPrice() + ","
-                                + product.getCategory() + "\n"
-                );
-            }
-            JOptionPane.showMessageDialog(null, "Inventory saved to file: " + filePath);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving inventory to file: " + e.getMessage());
+        if (filePath == null) {
+            return;
+        }
+        Path path = Paths.get(filePath).toAbsolutePath();
+        if (inventoryFile == null || !inventoryFile.getPath().equals(path)) {
+            inventoryFile = new IncrementalInventoryFile(path, changeTracker, versions);
         }
+        IncrementalInventoryFile file = inventoryFile;
+        new BackgroundTask<Long, Void>(this, "Saving inventory") {
+            @Override
+            protected Long compute() throws IOException {
+                // Only the changes since the last save are written, unless the whole file is due
+                BackgroundTask<Long, Void> task = this;
+                return file.save(new IncrementalInventoryFile.Progress() {
+                    @Override
+                    public void onProgress(long written, long total) {
+                        reportProgress(written, total);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return task.isCancelled();
+                    }
+                });
+            }
+
+            @Override
+            protected void onSuccess(Long written) {
+                JOptionPane.showMessageDialog(null, "Inventory saved to file: " + filePath + " (" + written
+                        + " rows written)");
+            }
+
+            @Override
+            protected void onFailure(Throwable cause) {
+                JOptionPane.showMessageDialog(null, "Error saving inventory to file: " + cause.getMessage());
+            }
+        }.start();
     }
 
+    /**
+     * Parses the file in parallel chunks on a worker thread and adds each chunk to the inventory as
+     * it arrives. Cancelling stops after the current chunk; products already added are kept.
+     */
     private void loadInventoryFromFile() {
         String filePath = JOptionPane.showInputDialog("Enter file path:");
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(filePath));
-            for (String line : lines) {
-                String[] parts = line.split(",");
-                int productId = Integer.parseInt(parts[0]);
-                String productName = parts[1];
-                int quantityInStock = Integer.parseInt(parts[2]);
-                double price = Double.parseDouble(parts[3]);
-                String category = parts[4];
-                Product product = new Product(productName, quantityInStock, price, category);
-                inventoryManager.addProduct(product);
-            }
-            JOptionPane.showMessageDialog(null, "Inventory loaded from file: " + filePath);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error loading inventory from file: " + e.getMessage());
+        if (filePath == null) {
+            return;
         }
+        int choice = JOptionPane.showConfirmDialog(null,
+                "Merge the file into the current inventory by product id?\n"
+                        + "Choose No to add every row as a new product.",
+                "Load Inventory", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (choice == JOptionPane.YES_OPTION) {
+            mergeInventoryFromFile(filePath);
+            return;
+        } else if (choice != JOptionPane.NO_OPTION) {
+            return;
+        }
+        new BackgroundTask<LoadReport, Integer>(this, "Loading inventory") {
+            private long loaded;
+
+            @Override
+            protected LoadReport compute() throws IOException {
+                IncrementalInventoryFile.Delta delta = IncrementalInventoryFile.readDelta(Paths.get(filePath));
+                LoadReport report = InventoryFileReader.readParallel(Paths.get(filePath), ForkJoinPool.commonPool(),
+                        rows -> {
+                            if (isCancelled()) {
+                                throw new CancellationException();
+                            }
+                            publishBatch(addAsNewProducts(rows, delta));
+                        });
+                InventoryFileReader.RowBatch added = new InventoryFileReader.RowBatch();
+                delta.forEachAdded(added);
+                publishBatch(addAsNewProducts(added, IncrementalInventoryFile.Delta.EMPTY));
+                return report;
+            }
+
+            @Override
+            protected void onBatch(List<Integer> batch) {
+                for (int count : batch) {
+                    loaded += count;
+                }
+                setNote(loaded + " products loaded");
+            }
+
+            @Override
+            protected void onSuccess(LoadReport report) {
+                StringBuilder message = new StringBuilder("Inventory loaded from file: " + filePath
+                        + "\n" + report.getRowsLoaded() + " products loaded.");
+                if (report.hasErrors()) {
+                    message.append("\n").append(report.getErrorCount()).append(" lines skipped:");
+                    for (String error : report.getErrors().subList(0, Math.min(10, report.getErrors().size()))) {
+                        message.append("\n").append(error);
+                    }
+                }
+                JOptionPane.showMessageDialog(null, message.toString());
+                displayInventory();
+            }
+
+            @Override
+            protected void onCancelled() {
+                JOptionPane.showMessageDialog(null, "Loading cancelled. Products already loaded were kept.");
+                displayInventory();
+            }
+
+            @Override
+            protected void onFailure(Throwable cause) {
+                JOptionPane.showMessageDialog(null, "Error loading inventory from file: " + cause.getMessage());
+            }
+        }.start();
+    }
+
+    // Adds the rows, as changed by the delta, under one block of new ids; returns how many were added.
+    private int addAsNewProducts(InventoryFileReader.RowBatch rows, IncrementalInventoryFile.Delta delta) {
+        if (rows.size() == 0) {
+            return 0;
+        }
+        List<Product> products = new ArrayList<>(rows.size());
+        int firstId = Product.getIdAllocator().reserve(rows.size());
+        rows.forEach(delta.filter((productId, productName, quantityInStock, price, category) ->
+                products.add(new Product(firstId + products.size(), productName, quantityInStock, price, category))));
+        inventoryManager.addProducts(products);
+        return products.size();
+    }
+
+    /**
+     * Compares the file with the inventory on a worker thread and applies only the rows that
+     * differ (see {@link InventoryMerge}). Cancelling while the file is being compared leaves the
+     * inventory unchanged.
+     */
+    private void mergeInventoryFromFile(String filePath) {
+        new BackgroundTask<InventoryMerge, Void>(this, "Merging inventory") {
+            private LoadReport report;
+
+            @Override
+            protected InventoryMerge compute() throws IOException {
+                IncrementalInventoryFile.Delta delta = IncrementalInventoryFile.readDelta(Paths.get(filePath));
+                InventoryMerge merge = new InventoryMerge(inventoryManager, false);
+                InventoryFileReader.RowHandler handler = delta.filter(merge);
+                report = InventoryFileReader.readParallel(Paths.get(filePath), ForkJoinPool.commonPool(), rows -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    rows.forEach(handler);
+                });
+                delta.forEachAdded(merge);
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                merge.apply();
+                return merge;
+            }
+
+            @Override
+            protected void onSuccess(InventoryMerge merge) {
+                StringBuilder message = new StringBuilder("Inventory merged from file: " + filePath
+                        + "\n" + merge.summary() + ".");
+                if (report.hasErrors()) {
+                    message.append("\n").append(report.getErrorCount()).append(" lines skipped:");
+                    for (String error : report.getErrors().subList(0, Math.min(10, report.getErrors().size()))) {
+                        message.append("\n").append(error);
+                    }
+                }
+                JOptionPane.showMessageDialog(null, message.toString());
+                displayInventory();
+            }
+
+            @Override
+            protected void onCancelled() {
+                JOptionPane.showMessageDialog(null, "Merging cancelled.");
+                displayInventory();
+            }
+
+            @Override
+            protected void onFailure(Throwable cause) {
+                JOptionPane.showMessageDialog(null, "Error merging inventory from file: " + cause.getMessage());
+            }
+        }.start();
     }
 
     public static void main(String[] args) {
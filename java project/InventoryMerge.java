@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Loads inventory rows as upserts keyed on their stored product id, so loading the same file
+ * twice leaves the inventory as it was instead of doubling it.
+ *
+ * Rows are fed in through {@link #onRow} or {@link #onBatch} and compared with the store as they
+ * arrive; only rows that are new or differ from the stored product are kept. {@link #apply()}
+ * then writes just those, so refreshing from a feed in which little has changed costs a lookup
+ * per row and a write per change. With {@code removeMissing}, products the rows never mention
+ * are removed as well, making the store match the file exactly.
+ *
+ * The file wins: stock sold between {@link #onRow} and {@link #apply()} is overwritten by the
+ * level in the file, as with any load.
+ */
+class InventoryMerge implements InventoryFileReader.RowHandler, InventoryFileReader.BatchHandler {
+    private final InventoryStore store;
+    private final boolean removeMissing;
+    // Rows that differ from the store, by id; a later row for the same id replaces an earlier one.
+    private final Map<Integer, Product> changes = new LinkedHashMap<>();
+    private final IdSet seen = new IdSet();
+    private long skipped;
+    private long added;
+    private long updated;
+    private long removed;
+    private long unchanged;
+    private boolean applied;
+
+    public InventoryMerge(InventoryStore store, boolean removeMissing) {
+        this.store = store;
+        this.removeMissing = removeMissing;
+    }
+
+    @Override
+    public void onBatch(InventoryFileReader.RowBatch rows) {
+        rows.forEach(this);
+    }
+
+    /**
+     * Compares one row with the stored product of the same id. Rows with an id below 1 are
+     * skipped, since no product can have one.
+     */
+    @Override
+    public void onRow(int productId, String productName, int quantityInStock, double price, String category) {
+        if (applied) {
+            throw new IllegalStateException("Merge already applied");
+        }
+        if (productId < 1) {
+            skipped++;
+            return;
+        }
+        seen.add(productId);
+        Product existing = store.getProductById(productId);
+        if (existing != null && existing.getQuantityInStock() == quantityInStock
+                && Double.compare(existing.getPrice(), price) == 0
+                && Objects.equals(existing.getProductName(), productName)
+                && Objects.equals(existing.getCategory(), category)) {
+            changes.remove(productId);
+        } else {
+            changes.put(productId, new Product(productId, productName, quantityInStock, price, category));
+        }
+    }
+
+    /**
+     * Writes the differences found so far to the store: new products are added in one step,
+     * changed ones updated (a stock-only change as just a stock update), and, with
+     * {@code removeMissing}, products no row mentioned are removed. Can be called once.
+     */
+    public void apply() {
+        if (applied) {
+            throw new IllegalStateException("Merge already applied");
+        }
+        applied = true;
+        List<Product> newProducts = new ArrayList<>();
+        for (Product row : changes.values()) {
+            Product existing = store.getProductById(row.getProductId());
+            if (existing == null) {
+                newProducts.add(row);
+            } else if (sameFields(existing, row)) {
+                unchanged++;
+            } else if (Objects.equals(existing.getProductName(), row.getProductName())
+                    && Double.compare(existing.getPrice(), row.getPrice()) == 0
+                    && Objects.equals(existing.getCategory(), row.getCategory())) {
+                store.updateQuantityInStock(row.getProductId(), row.getQuantityInStock());
+                updated++;
+            } else {
+                store.updateProduct(row);
+                updated++;
+            }
+        }
+        if (!newProducts.isEmpty()) {
+            store.addProducts(newProducts);
+            added = newProducts.size();
+        }
+        unchanged += seen.size() - changes.size();
+        changes.clear();
+
+        if (removeMissing) {
+            // Collected first so the store is not changed under its own cursor.
+            int[] missing = new int[16];
+            int count = 0;
+            ProductCursor product = store.cursor();
+            while (product.next()) {
+                int productId = product.getProductId();
+                if (productId < 1 || !seen.contains(productId)) {
+                    if (count == missing.length) {
+                        missing = Arrays.copyOf(missing, count * 2);
+                    }
+                    missing[count++] = productId;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                store.removeProduct(missing[i]);
+            }
+            removed = count;
+        }
+    }
+
+    private static boolean sameFields(Product a, Product b) {
+        return a.getQuantityInStock() == b.getQuantityInStock()
+                && Double.compare(a.getPrice(), b.getPrice()) == 0
+                && Objects.equals(a.getProductName(), b.getProductName())
+                && Objects.equals(a.getCategory(), b.getCategory());
+    }
+
+    public long getAddedCount() {
+        return added;
+    }
+
+    public long getUpdatedCount() {
+        return updated;
+    }
+
+    public long getRemovedCount() {
+        return removed;
+    }
+
+    public long getUnchangedCount() {
+        return unchanged;
+    }
+
+    /**
+     * Rows ignored because their product id was below 1.
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * One-line summary, such as "2 added, 1 updated, 0 removed, 40 unchanged".
+     */
+    public String summary() {
+        String summary = added + " added, " + updated + " updated, " + removed + " removed, " + unchanged + " unchanged";
+        return skipped > 0 ? summary + ", " + skipped + " rows without a valid id skipped" : summary;
+    }
+}
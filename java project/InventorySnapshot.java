@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary inventory snapshot that is opened by memory-mapping it rather than parsing it, and that
+ * keeps product ids as they were when it was written.
+ *
+ * <pre>
+ * header         magic, version, product count, string count, section offsets,
+ *                journal generation (48 bytes; version 1 stops before the generation)
+ * records        one fixed-width 24-byte record per product:
+ *                id, name code, category code, quantity (ints), price (double)
+ * string offsets one long per distinct name or category, relative to the string data
+ * string data    UTF-8 bytes of every distinct name and category, back to back
+ * </pre>
+ *
+ * Names and categories are stored once each and referenced by code (-1 for null), so records
+ * stay fixed width. The journal generation records which {@link TransactionJournal} generation the
+ * snapshot already reflects (-1 for none). Opening a snapshot reads only the header; records and strings are decoded
+ * from the mapping when a cursor reaches them.
+ */
+class InventorySnapshot {
+    private static final int MAGIC = 0x494E5653; // "INVS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int VERSION_1_HEADER_SIZE = 40;
+    private static final int RECORD_SIZE = 24;
+    private static final int NULL_STRING = -1;
+    // Records are mapped in windows so snapshots larger than 2 GB can still be read.
+    private static final int RECORDS_PER_WINDOW = Integer.MAX_VALUE / RECORD_SIZE;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    private final int productCount;
+    private final long journalGeneration;
+    private final MappedByteBuffer[] recordWindows;
+    private final MappedByteBuffer stringOffsets;
+    private final MappedByteBuffer stringData;
+    // Strings decoded so far, filled in lazily as codes are first used.
+    private final String[] strings;
+
+    private InventorySnapshot(int productCount, long journalGeneration, MappedByteBuffer[] recordWindows,
+                              MappedByteBuffer stringOffsets, MappedByteBuffer stringData, int stringCount) {
+        this.productCount = productCount;
+        this.journalGeneration = journalGeneration;
+        this.recordWindows = recordWindows;
+        this.stringOffsets = stringOffsets;
+        this.stringData = stringData;
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * Writes the whole store to {@code path}. The snapshot is written to a temporary file next to
+     * it and renamed into place, so an interrupted save leaves the previous snapshot intact.
+     */
+    public static void write(InventoryStore store, Path path) throws IOException {
+        write(store, path, -1);
+    }
+
+    /**
+     * Writes the whole store as {@link #write(InventoryStore, Path)} does, stamped with the journal
+     * generation whose transactions it already reflects.
+     */
+    public static void write(InventoryStore store, Path path, long journalGeneration) throws IOException {
+        write(store.cursor(), path, journalGeneration);
+    }
+
+    /**
+     * Writes the rows {@code products} walks over, e.g. those of a
+     * {@link VersionedInventoryStore.Snapshot}, stamped with a journal generation (-1 for none).
+     */
+    public static void write(ProductCursor products, Path path, long journalGeneration) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = AtomicFiles.createTempFileFor(absolute);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeTo(products, channel, journalGeneration);
+                channel.force(true);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeTo(ProductCursor product, FileChannel channel, long journalGeneration)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        channel.position(HEADER_SIZE);
+        int productCount = 0;
+        while (product.next()) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                drain(buffer, channel);
+            }
+            buffer.putInt(product.getProductId());
+            buffer.putInt(encode(product.getProductName(), codes, strings));
+            buffer.putInt(encode(product.getCategory(), codes, strings));
+            buffer.putInt(product.getQuantityInStock());
+            buffer.putDouble(product.getPrice());
+            productCount++;
+        }
+        drain(buffer, channel);
+
+        long stringOffsetsOffset = channel.position();
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        long offset = 0;
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            if (buffer.remaining() < Long.BYTES) {
+                drain(buffer, channel);
+            }
+            buffer.putLong(offset);
+            offset += bytes.length;
+        }
+        // One trailing offset marks the end of the last string.
+        if (buffer.remaining() < Long.BYTES) {
+            drain(buffer, channel);
+        }
+        buffer.putLong(offset);
+        drain(buffer, channel);
+
+        long stringDataOffset = channel.position();
+        for (byte[] bytes : encoded) {
+            if (bytes.length > buffer.remaining()) {
+                drain(buffer, channel);
+            }
+            if (bytes.length > buffer.capacity()) {
+                channel.write(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        }
+        drain(buffer, channel);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(productCount);
+        buffer.putInt(strings.size());
+        buffer.putLong(HEADER_SIZE);
+        buffer.putLong(stringOffsetsOffset);
+        buffer.putLong(stringDataOffset);
+        buffer.putLong(journalGeneration);
+        buffer.flip();
+        // The header starts at file offset 0, so the buffer position doubles as the file position.
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    private static int encode(String value, Map<String, Integer> codes, List<String> strings) {
+        if (value == null) {
+            return NULL_STRING;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = strings.size();
+            codes.put(value, code);
+            strings.add(value);
+        }
+        return code;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps a snapshot written by {@link #write(InventoryStore, Path)}. Only the header is read here.
+     *
+     * @throws IOException if the file cannot be read or is not an inventory snapshot
+     */
+    public static InventorySnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < VERSION_1_HEADER_SIZE) {
+                throw new IOException("Not an inventory snapshot: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_SIZE));
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported inventory snapshot version " + version + ": " + path);
+            }
+            if (version == VERSION && size < HEADER_SIZE) {
+                throw new IOException("Corrupt inventory snapshot: " + path);
+            }
+            int productCount = header.getInt();
+            int stringCount = header.getInt();
+            long recordsOffset = header.getLong();
+            long stringOffsetsOffset = header.getLong();
+            long stringDataOffset = header.getLong();
+            long journalGeneration = version == 1 ? -1 : header.getLong();
+            if (productCount < 0 || stringCount < 0
+                    || recordsOffset + (long) productCount * RECORD_SIZE != stringOffsetsOffset
+                    || stringOffsetsOffset + (stringCount + 1L) * Long.BYTES != stringDataOffset
+                    || stringDataOffset > size) {
+                throw new IOException("Corrupt inventory snapshot: " + path);
+            }
+
+            int windows = (productCount + RECORDS_PER_WINDOW - 1) / RECORDS_PER_WINDOW;
+            MappedByteBuffer[] recordWindows = new MappedByteBuffer[windows];
+            for (int window = 0; window < windows; window++) {
+                long first = (long) window * RECORDS_PER_WINDOW;
+                long records = Math.min(RECORDS_PER_WINDOW, productCount - first);
+                recordWindows[window] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        recordsOffset + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+            MappedByteBuffer stringOffsets = channel.map(FileChannel.MapMode.READ_ONLY, stringOffsetsOffset,
+                    stringDataOffset - stringOffsetsOffset);
+            MappedByteBuffer stringData = channel.map(FileChannel.MapMode.READ_ONLY, stringDataOffset,
+                    size - stringDataOffset);
+            return new InventorySnapshot(productCount, journalGeneration, recordWindows, stringOffsets, stringData,
+                    stringCount);
+        }
+    }
+
+    public int size() {
+        return productCount;
+    }
+
+    public long getJournalGeneration() {
+        return journalGeneration;
+    }
+
+    /**
+     * Returns a cursor over the snapshot's products in the order they were written.
+     */
+    public ProductCursor cursor() {
+        return new ProductCursor() {
+            private int index = -1;
+            private ByteBuffer window;
+            private int position;
+
+            @Override
+            public boolean next() {
+                if (index + 1 >= productCount) {
+                    return false;
+                }
+                index++;
+                window = recordWindows[index / RECORDS_PER_WINDOW];
+                position = (index % RECORDS_PER_WINDOW) * RECORD_SIZE;
+                return true;
+            }
+
+            @Override
+            public int getProductId() {
+                return window.getInt(position);
+            }
+
+            @Override
+            public String getProductName() {
+                return string(window.getInt(position + 4));
+            }
+
+            @Override
+            public String getCategory() {
+                return string(window.getInt(position + 8));
+            }
+
+            @Override
+            public int getQuantityInStock() {
+                return window.getInt(position + 12);
+            }
+
+            @Override
+            public double getPrice() {
+                return window.getDouble(position + 16);
+            }
+        };
+    }
+
+    /**
+     * Adds every product in the snapshot to {@code store} under its original id, in batches.
+     */
+    public void loadInto(InventoryStore store) {
+        List<Product> batch = new ArrayList<>(Math.min(productCount, LOAD_BATCH_SIZE));
+        ProductCursor product = cursor();
+        while (product.next()) {
+            batch.add(new Product(product.getProductId(), product.getProductName(), product.getQuantityInStock(),
+                    product.getPrice(), product.getCategory()));
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                store.addProducts(batch);
+                batch.clear();
+            }
+        }
+        store.addProducts(batch);
+    }
+
+    private String string(int code) {
+        if (code == NULL_STRING) {
+            return null;
+        }
+        String string = strings[code];
+        if (string == null) {
+            long start = stringOffsets.getLong(code * Long.BYTES);
+            long end = stringOffsets.getLong((code + 1) * Long.BYTES);
+            byte[] bytes = new byte[(int) (end - start)];
+            stringData.get((int) start, bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings[code] = string;
+        }
+        return string;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Storage backend for the product catalogue. {@link InventoryManager} keeps one Product object
+ * per row behind hash indexes; {@link ColumnarInventoryManager} keeps the rows in primitive
+ * arrays for very large catalogues. Both are safe to use from several threads at once.
+ */
+interface InventoryStore {
+    /**
+     * Stores a product, replacing any product already stored under the same id.
+     */
+    void addProduct(Product product);
+
+    /**
+     * Stores several products in one step, taking the store's locks once instead of per product.
+     * Products are added in iteration order with the same replace-by-id rule as addProduct.
+     */
+    void addProducts(Collection<Product> products);
+
+    /**
+     * Copies the fields of the given product onto the stored product with the same id.
+     */
+    void updateProduct(Product product);
+
+    /**
+     * Sets the stock level of a stored product and keeps the category totals in step.
+     * Stock changes should go through here rather than {@link Product#setQuantityInStock(int)}.
+     */
+    void updateQuantityInStock(int productId, int quantityInStock);
+
+    /**
+     * Atomically adds {@code delta} units (negative for a sale) to a stored product's stock and
+     * returns the new level.
+     *
+     * @throws IllegalArgumentException if no product with that id is stored
+     */
+    int adjustQuantityInStock(int productId, int delta);
+
+    /**
+     * Atomically replaces a stored product's stock with {@code update} applied to it and returns
+     * the new level. {@code update} runs under the product's stock lock, so no other stock change
+     * lands between reading the level and writing the result; it must be quick and must not call
+     * back into the store. If it throws, the stock is left as it was.
+     *
+     * @throws IllegalArgumentException if no product with that id is stored
+     */
+    int computeQuantityInStock(int productId, IntUnaryOperator update);
+
+    void removeProduct(int productId);
+
+    Product getProductById(int productId);
+
+    /**
+     * Returns a copy of the catalogue in insertion order. Prefer {@link #cursor()} for listings.
+     */
+    List<Product> getAllProducts();
+
+    /**
+     * Returns the first product indexed under the given name, or null if there is none.
+     * Use {@link #getProductsByName(String)} when duplicate names matter.
+     */
+    Product getProductByName(String productName);
+
+    List<Product> getProductsByName(String productName);
+
+    List<Product> getProductsByCategory(String category);
+
+    Set<String> getCategories();
+
+    /**
+     * Returns the running totals for a category. Unknown categories report all zeros. While
+     * stock is being updated concurrently the figures are not a single point-in-time snapshot.
+     */
+    CategoryStats getCategoryStats(String category);
+
+    int size();
+
+    /**
+     * Returns a read-only cursor over the catalogue in insertion order. It copies nothing up
+     * front, so it is the cheap way to list or save a large inventory.
+     */
+    ProductCursor cursor();
+}
@@ -0,0 +1,262 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Table model over an {@link InventoryStore} that holds nothing per row but the product id.
+ * Cells are read from the store when the table paints them, so only the visible rows are ever
+ * looked up and a catalogue of millions of products costs four bytes a row.
+ *
+ * The row list is a {@link Rows} snapshot built in one cursor pass, which is where filtering by
+ * name and category and sorting by a column happen. Building it is the slow part, so it is done
+ * off the event dispatch thread and swapped in with {@link #setRows(Rows)}. Products removed from
+ * the store after the snapshot was taken show as empty rows until the next refresh.
+ */
+class InventoryTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final int ID_COLUMN = 0;
+    static final int NAME_COLUMN = 1;
+    static final int CATEGORY_COLUMN = 2;
+    static final int QUANTITY_COLUMN = 3;
+    static final int PRICE_COLUMN = 4;
+
+    private static final String[] COLUMN_NAMES = {"Product ID", "Product Name", "Category", "Quantity in Stock", "Price"};
+    private static final Class<?>[] COLUMN_CLASSES = {Integer.class, String.class, String.class, Integer.class, Double.class};
+
+    private final InventoryStore store;
+    private Rows rows = Rows.EMPTY;
+    // The table asks for a row's cells one after another, so remember the last product looked up.
+    private int cachedRow = -1;
+    private Product cachedProduct;
+
+    public InventoryTableModel(InventoryStore store) {
+        this.store = store;
+    }
+
+    public Rows getRows() {
+        return rows;
+    }
+
+    public void setRows(Rows rows) {
+        this.rows = rows;
+        cachedRow = -1;
+        cachedProduct = null;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMN_NAMES[column];
+        if (column == rows.sortColumn) {
+            name += rows.ascending ? " \u25B2" : " \u25BC";
+        }
+        return name;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (row != cachedRow) {
+            cachedProduct = store.getProductById(rows.productIds[row]);
+            cachedRow = row;
+        }
+        Product product = cachedProduct;
+        if (product == null) {
+            return column == ID_COLUMN ? rows.productIds[row] : null;
+        }
+        switch (column) {
+            case ID_COLUMN:
+                return product.getProductId();
+            case NAME_COLUMN:
+                return product.getProductName();
+            case CATEGORY_COLUMN:
+                return product.getCategory();
+            case QUANTITY_COLUMN:
+                return product.getQuantityInStock();
+            case PRICE_COLUMN:
+                return product.getPrice();
+            default:
+                throw new IndexOutOfBoundsException("No column " + column);
+        }
+    }
+
+    /**
+     * The ids of the products to show, in display order, with the filter and sort they were built
+     * with. Immutable, so it can be built off the event dispatch thread and handed to
+     * {@link #setRows(Rows)}.
+     */
+    static class Rows {
+        static final Rows EMPTY = new Rows(new int[0], 0, null, null, -1, true);
+        private static final int CANCEL_CHECK_MASK = 0xFFFF;
+
+        private final int[] productIds;
+        private final int size;
+        private final String nameFilter;
+        private final String categoryFilter;
+        private final int sortColumn;
+        private final boolean ascending;
+
+        private Rows(int[] productIds, int size, String nameFilter, String categoryFilter, int sortColumn,
+                     boolean ascending) {
+            this.productIds = productIds;
+            this.size = size;
+            this.nameFilter = nameFilter;
+            this.categoryFilter = categoryFilter;
+            this.sortColumn = sortColumn;
+            this.ascending = ascending;
+        }
+
+        /**
+         * Collects the matching product ids in one pass over {@code store} and sorts them by
+         * {@code sortColumn} (-1 for store order). Only the sort column's values are gathered
+         * alongside the ids.
+         *
+         * @throws CancellationException if the calling thread is interrupted
+         */
+        static Rows load(InventoryStore store, String nameFilter, String categoryFilter, int sortColumn,
+                         boolean ascending) {
+            String name = nameFilter == null || nameFilter.isEmpty() ? null : nameFilter.toLowerCase(Locale.ROOT);
+            String category = categoryFilter == null || categoryFilter.isEmpty() ? null : categoryFilter;
+            int capacity = Math.max(16, store.size());
+            int[] ids = new int[capacity];
+            int[] intKeys = sortColumn == QUANTITY_COLUMN ? new int[capacity] : null;
+            double[] doubleKeys = sortColumn == PRICE_COLUMN ? new double[capacity] : null;
+            String[] stringKeys = sortColumn == NAME_COLUMN || sortColumn == CATEGORY_COLUMN ? new String[capacity] : null;
+            int size = 0;
+            int scanned = 0;
+
+            ProductCursor product = store.cursor();
+            while (product.next()) {
+                if ((scanned++ & CANCEL_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Inventory listing cancelled");
+                }
+                if (category != null && !category.equals(product.getCategory())) {
+                    continue;
+                }
+                if (name != null && (product.getProductName() == null
+                        || !product.getProductName().toLowerCase(Locale.ROOT).contains(name))) {
+                    continue;
+                }
+                // The store may have grown since its size was read.
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    intKeys = intKeys == null ? null : Arrays.copyOf(intKeys, size * 2);
+                    doubleKeys = doubleKeys == null ? null : Arrays.copyOf(doubleKeys, size * 2);
+                    stringKeys = stringKeys == null ? null : Arrays.copyOf(stringKeys, size * 2);
+                }
+                ids[size] = product.getProductId();
+                if (intKeys != null) {
+                    intKeys[size] = product.getQuantityInStock();
+                } else if (doubleKeys != null) {
+                    doubleKeys[size] = product.getPrice();
+                } else if (stringKeys != null) {
+                    stringKeys[size] = sortColumn == NAME_COLUMN ? product.getProductName() : product.getCategory();
+                }
+                size++;
+            }
+
+            if (sortColumn >= 0) {
+                int[] finalIds = ids;
+                int[] quantities = intKeys;
+                double[] prices = doubleKeys;
+                String[] strings = stringKeys;
+                RowComparator comparator;
+                if (sortColumn == ID_COLUMN) {
+                    comparator = (a, b) -> Integer.compare(finalIds[a], finalIds[b]);
+                } else if (quantities != null) {
+                    comparator = (a, b) -> Integer.compare(quantities[a], quantities[b]);
+                } else if (prices != null) {
+                    comparator = (a, b) -> Double.compare(prices[a], prices[b]);
+                } else {
+                    comparator = (a, b) -> compareNullsFirst(strings[a], strings[b]);
+                }
+                RowComparator order = ascending ? comparator : (a, b) -> comparator.compare(b, a);
+                int[] positions = new int[size];
+                for (int i = 0; i < size; i++) {
+                    positions[i] = i;
+                }
+                mergeSort(positions, new int[size], 0, size, order);
+                int[] sorted = new int[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = ids[positions[i]];
+                }
+                ids = sorted;
+            }
+            return new Rows(ids, size, nameFilter, categoryFilter, sortColumn, ascending);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getProductId(int row) {
+            return productIds[row];
+        }
+
+        public String getNameFilter() {
+            return nameFilter;
+        }
+
+        public String getCategoryFilter() {
+            return categoryFilter;
+        }
+
+        public int getSortColumn() {
+            return sortColumn;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+
+        private static int compareNullsFirst(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareToIgnoreCase(b);
+        }
+
+        // Stable merge sort of row positions, so equal keys keep store order without boxing.
+        private static void mergeSort(int[] positions, int[] scratch, int from, int to, RowComparator order) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(positions, scratch, from, middle, order);
+            mergeSort(positions, scratch, middle, to, order);
+            if (order.compare(positions[middle - 1], positions[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(positions, from, scratch, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && order.compare(scratch[left], scratch[right]) <= 0)) {
+                    positions[i] = scratch[left++];
+                } else {
+                    positions[i] = scratch[right++];
+                }
+            }
+        }
+    }
+
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+}
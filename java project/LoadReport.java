@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of loading an inventory file: how many rows were loaded and which lines were skipped.
+ * Only the first {@value #MAX_RECORDED_ERRORS} problems are kept verbatim so a badly broken file
+ * cannot flood memory; {@link #getErrorCount()} still counts all of them.
+ */
+class LoadReport {
+    private static final int MAX_RECORDED_ERRORS = 100;
+
+    private long rowsLoaded;
+    private long errorCount;
+    private final List<Long> errorLines = new ArrayList<>();
+    private final List<String> errorReasons = new ArrayList<>();
+
+    void accept() {
+        rowsLoaded++;
+    }
+
+    void reject(long lineNumber, String reason) {
+        errorCount++;
+        if (errorLines.size() < MAX_RECORDED_ERRORS) {
+            errorLines.add(lineNumber);
+            errorReasons.add(reason);
+        }
+    }
+
+    // Folds in the report for a chunk of the file whose first line is line lineOffset + 1.
+    void merge(LoadReport chunk, long lineOffset) {
+        rowsLoaded += chunk.rowsLoaded;
+        errorCount += chunk.errorCount;
+        for (int i = 0; i < chunk.errorLines.size() && errorLines.size() < MAX_RECORDED_ERRORS; i++) {
+            errorLines.add(chunk.errorLines.get(i) + lineOffset);
+            errorReasons.add(chunk.errorReasons.get(i));
+        }
+    }
+
+    public long getRowsLoaded() {
+        return rowsLoaded;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public List<String> getErrors() {
+        List<String> errors = new ArrayList<>(errorLines.size());
+        for (int i = 0; i < errorLines.size(); i++) {
+            errors.add("line " + errorLines.get(i) + ": " + errorReasons.get(i));
+        }
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+}
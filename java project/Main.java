@@ -1,27 +1,105 @@
+import javax.management.JMException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
 
 public class Main {
-    private InventoryManager inventoryManager;
-    private List<Transaction> transactions;
+    private InventoryStore inventoryManager;
+    private TransactionLog transactions;
     private SalesReportGenerator salesReportGenerator;
-    private List<User> users;
+    private UserStore users;
+    // Write-ahead journal for recorded transactions; null until openJournal is called.
+    private volatile TransactionJournal journal;
+    // Journal generation already reflected in the loaded snapshot, or -1 if none was loaded.
+    private long snapshotJournalGeneration = -1;
+    // Transactions are recorded under the read lock and checkpoints and snapshots are taken under
+    // the write lock, so neither sees a transaction half recorded: journaled but not applied, or
+    // in the log but not yet in stock.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final StockAlerts stockAlerts;
+    private final ProductSearchIndex searchIndex;
+    private final ChangeTrackingInventoryStore changeTracker;
+    private final VersionedInventoryStore versions;
+    // The store passed in, when it keeps stock per warehouse; null otherwise.
+    private final ShardedInventoryStore warehouses;
+    // The text file saveInventoryToFile last wrote, which later saves to it update incrementally.
+    private IncrementalInventoryFile inventoryFile;
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer recordTimer = metrics.timer("inventory_record_transaction_seconds",
+            "Time to record one transaction, including waiting for the journal");
+    private final Metrics.Timer batchTimer = metrics.timer("inventory_record_transaction_batch_seconds",
+            "Time to record a batch of transactions");
+    private final Metrics.Counter transactionsRecorded = metrics.counter("inventory_transactions_recorded_total",
+            "Transactions recorded");
+    private final Metrics.Counter transactionsRejected = metrics.counter("inventory_transactions_rejected_total",
+            "Transactions rejected from batches");
+    private final Metrics.Timer checkpointTimer = metrics.timer("inventory_checkpoint_seconds",
+            "Time to save a checkpoint");
+    private final Metrics.Timer salesReportTimer = metrics.timer("inventory_sales_report_seconds",
+            "Time to build and print the sales summary");
+    private final Metrics.Timer salesReportExportTimer = metrics.timer("inventory_sales_report_export_seconds",
+            "Time to export the sales report to a file");
+    private final Metrics.Timer fileSaveTimer = metrics.timer("inventory_file_save_seconds",
+            "Time to save the inventory as text");
+    private final Metrics.Timer snapshotSaveTimer = metrics.timer("inventory_snapshot_save_seconds",
+            "Time to save an inventory snapshot");
+    private final Metrics.Timer snapshotLoadTimer = metrics.timer("inventory_snapshot_load_seconds",
+            "Time to load an inventory snapshot");
+    private final Metrics.Timer fileLoadTimer = metrics.timer("inventory_file_load_seconds",
+            "Time to load an inventory text file");
+    private final Metrics.Timer fileMergeTimer = metrics.timer("inventory_file_merge_seconds",
+            "Time to merge an inventory text file into the inventory");
+    private final Metrics.Timer searchTimer = metrics.timer("inventory_search_seconds",
+            "Time to answer a product search");
+    private final Metrics.Timer fileImportTimer = metrics.timer("inventory_file_import_seconds",
+            "Time to import an inventory text file in parallel");
 
     public Main() {
-        this.inventoryManager = new InventoryManager();
-        this.transactions = new ArrayList<>();
-        this.salesReportGenerator = new SalesReportGenerator(transactions);
-        this.users = new ArrayList<>();
+        this(new InventoryManager());
+    }
+
+    public Main(InventoryStore inventoryManager) {
+        this.stockAlerts = new StockAlerts(inventoryManager);
+        this.versions = new VersionedInventoryStore(inventoryManager);
+        this.warehouses = inventoryManager instanceof ShardedInventoryStore
+                ? (ShardedInventoryStore) inventoryManager : null;
+        InventoryStore alerting = new AlertingInventoryStore(versions, stockAlerts);
+        this.searchIndex = new ProductSearchIndex(alerting);
+        searchIndex.rebuild();
+        this.changeTracker = new ChangeTrackingInventoryStore(new SearchableInventoryStore(alerting, searchIndex));
+        this.inventoryManager = new InstrumentedInventoryStore(changeTracker, metrics);
+        this.transactions = new TransactionLog();
+        this.salesReportGenerator = new SalesReportGenerator(transactions, alerting);
+        this.users = new UserStore();
     }
 
     public void addUser(User user) {
-        users.add(user);
+        users.addUser(user);
+    }
+
+    public UserStore getUserStore() {
+        return users;
     }
 
     public void addProduct(Product product) {
@@ -36,85 +114,486 @@ public class Main {
         inventoryManager.removeProduct(productId);
     }
 
+    /**
+     * Returns up to {@code limit} products whose names match {@code query}, ignoring case: names
+     * starting with it first, then names with a word starting with it, then names containing it.
+     * Fast enough to run on every keystroke; see {@link ProductSearchIndex}.
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        long started = System.nanoTime();
+        List<Product> results = searchIndex.search(query, limit);
+        searchTimer.recordSince(started);
+        return results;
+    }
+
+    public List<String> searchCategories(String query, int limit) {
+        return searchIndex.searchCategories(query, limit);
+    }
+
+    /**
+     * Records a transaction and applies it to stock. Safe to call from several threads at once.
+     * When a journal is open, this returns only once the transaction is durable on disk, and the
+     * transaction reaches the log only then. If the journal cannot take it, the stock change is
+     * taken back and the exception is rethrown, so a caller can retry without counting it twice.
+     * A failed journal write closes the journal; what reached the disk before the failure is
+     * replayed on the next open.
+     *
+     * @throws IllegalArgumentException if the product is not in the inventory; nothing is recorded
+     * @throws java.io.UncheckedIOException if the journal could not be written
+     */
     public void recordTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        updateProductQuantity(transaction.getProduct(), transaction.getQuantity(), transaction.getType());
+        long started = System.nanoTime();
+        TransactionJournal journal = this.journal;
+        checkpointLock.readLock().lock();
+        try {
+            // Stock first: it throws for an unknown product, which must leave the log untouched.
+            updateProductQuantity(transaction.getProduct(), transaction.getQuantity(), transaction.getType());
+            if (journal != null) {
+                // Under the read lock, so a checkpoint waits for the fsync rather than see the
+                // stock change without its log entry.
+                try {
+                    journal.awaitDurable(journal.append(transaction));
+                } catch (RuntimeException e) {
+                    updateProductQuantity(transaction.getProduct(), -transaction.getQuantity(), transaction.getType());
+                    throw e;
+                }
+            }
+            transactions.append(transaction);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        transactionsRecorded.increment();
+        recordTimer.recordSince(started);
+    }
+
+    /**
+     * Records a batch of transactions, such as a point-of-sale end-of-day upload. Entries are
+     * checked in order (see {@link TransactionBatch}), each product's stock is adjusted once by its
+     * net change, and the accepted entries are then appended to the log together. With a journal
+     * open, the whole batch shares one group commit, and the entries reach the log once it is
+     * durable; if the journal cannot take them, the stock changes are rolled back and the exception
+     * is rethrown, as for {@link #recordTransaction(Transaction)}.
+     *
+     * @return how many transactions were recorded and why the others were rejected
+     */
+    public TransactionBatchReport recordTransactions(Iterable<Transaction> batch) {
+        long started = System.nanoTime();
+        TransactionJournal journal = this.journal;
+        TransactionBatch validated;
+        checkpointLock.readLock().lock();
+        try {
+            validated = TransactionBatch.validate(batch);
+            validated.applyTo(inventoryManager);
+            if (journal != null) {
+                try {
+                    journal.awaitDurable(journal.appendAll(validated.getAccepted()));
+                } catch (RuntimeException e) {
+                    validated.rollBack(inventoryManager);
+                    throw e;
+                }
+            }
+            transactions.appendAll(validated.getAccepted());
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        TransactionBatchReport report = validated.getReport();
+        transactionsRecorded.add(report.getRecordedCount());
+        transactionsRejected.add(report.getRejectedCount());
+        batchTimer.recordSince(started);
+        return report;
+    }
+
+    public TransactionBatchReport recordTransactions(Stream<Transaction> batch) {
+        return recordTransactions((Iterable<Transaction>) batch::iterator);
+    }
+
+    /**
+     * Opens the transaction journal at {@code journalPath}, first replaying any transactions in it
+     * that the loaded inventory does not reflect yet. Load the inventory (ideally with
+     * {@link #loadInventorySnapshot(String)}) before calling this.
+     */
+    public void openJournal(String journalPath) {
+        try {
+            int[] replayed = new int[2];
+            journal = TransactionJournal.open(Paths.get(journalPath), snapshotJournalGeneration,
+                    (transactionId, productId, quantity, date, type, unitPriceCents) -> {
+                        Product product = inventoryManager.getProductById(productId);
+                        if (product == null) {
+                            replayed[1]++;
+                            return;
+                        }
+                        transactions.append(unitPriceCents == TransactionJournal.UNKNOWN_PRICE
+                                ? new Transaction(transactionId, product, quantity, date, type)
+                                : new Transaction(transactionId, product, quantity, date, type, unitPriceCents));
+                        updateProductQuantity(product, quantity, type);
+                        replayed[0]++;
+                    });
+            System.out.println("Transaction journal opened: " + journalPath + " (" + replayed[0] + " replayed"
+                    + (replayed[1] > 0 ? ", " + replayed[1] + " for unknown products skipped" : "") + ")");
+        } catch (IOException e) {
+            System.err.println("Error opening transaction journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes product, transaction and user ids carry on from the previous run instead of starting
+     * again at 1, by keeping each counter in a file in {@code directory} (see
+     * {@link FileIdAllocator}). Call this before creating any products, transactions or users.
+     */
+    public void openIdAllocators(String directory) {
+        try {
+            Path dir = Files.createDirectories(Paths.get(directory));
+            Product.setIdAllocator(FileIdAllocator.open(dir.resolve("product.ids")));
+            Transaction.setIdAllocator(FileIdAllocator.open(dir.resolve("transaction.ids")));
+            User.setIdAllocator(FileIdAllocator.open(dir.resolve("user.ids")));
+            System.out.println("Id allocators opened: " + dir);
+        } catch (IOException e) {
+            System.err.println("Error opening id allocators: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves a binary snapshot that includes every journaled transaction and then empties the
+     * journal. Recording pauses while the snapshot is written.
+     */
+    public void checkpoint(String snapshotPath) {
+        long started = System.nanoTime();
+        checkpointLock.writeLock().lock();
+        try {
+            TransactionJournal journal = this.journal;
+            long generation = journal != null ? journal.getGeneration() : -1;
+            InventorySnapshot.write(inventoryManager, Paths.get(snapshotPath), generation);
+            if (journal != null) {
+                journal.rotate();
+            }
+            snapshotJournalGeneration = generation;
+            System.out.println("Checkpoint saved to file: " + snapshotPath);
+        } catch (IOException e) {
+            System.err.println("Error saving checkpoint: " + e.getMessage());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        checkpointTimer.recordSince(started);
+    }
+
+    /**
+     * Takes a point-in-time view of the inventory and the transaction log for long reports and
+     * exports, which recording carries on around. Recording waits only while the view is taken.
+     * Close it when done.
+     */
+    public ConsistentSnapshot openSnapshot() {
+        checkpointLock.writeLock().lock();
+        try {
+            return new ConsistentSnapshot(versions.openSnapshot(), transactions.snapshot());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    public void closeJournal() {
+        TransactionJournal journal = this.journal;
+        this.journal = null;
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing transaction journal: " + e.getMessage());
+            }
+        }
     }
 
     private void updateProductQuantity(Product product, int quantity, TransactionType type) {
-        int currentQuantity = product.getQuantityInStock();
         if (type == TransactionType.SALE) {
-            product.setQuantityInStock(currentQuantity - quantity);
+            inventoryManager.adjustQuantityInStock(product.getProductId(), -quantity);
         } else {
-            product.setQuantityInStock(currentQuantity + quantity);
+            inventoryManager.adjustQuantityInStock(product.getProductId(), quantity);
+        }
+    }
+
+    /**
+     * Moves stock of a product from one warehouse to another. Only for an inventory built on a
+     * {@link ShardedInventoryStore}; the total stock does not change.
+     */
+    public void transferStock(int productId, String fromWarehouse, String toWarehouse, int quantity) {
+        if (warehouses == null) {
+            System.err.println("Error transferring stock: the inventory has no warehouses");
+            return;
+        }
+        // Under the read lock, so a snapshot never sees the units in neither warehouse.
+        checkpointLock.readLock().lock();
+        try {
+            warehouses.transfer(productId, fromWarehouse, toWarehouse, quantity);
+            System.out.println("Moved " + quantity + " units of product " + productId + " from " + fromWarehouse
+                    + " to " + toWarehouse);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error transferring stock: " + e.getMessage());
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the transactions of every month before {@code before} out of the heap into
+     * memory-mapped files in {@code directory}. They stay available to reports and queries.
+     */
+    public void archiveTransactions(String directory, YearMonth before) {
+        try {
+            transactions.offloadBefore(before, Paths.get(directory));
+            System.out.println("Transactions before " + before + " archived to: " + directory);
+        } catch (IOException e) {
+            System.err.println("Error archiving transactions: " + e.getMessage());
         }
     }
 
+    /**
+     * Returns the reorder thresholds and alert listeners for this inventory.
+     */
+    public StockAlerts getStockAlerts() {
+        return stockAlerts;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Prints every counter and timer in the Prometheus text format.
+     */
+    public void printMetrics() {
+        System.out.print(metrics.toPrometheusText());
+    }
+
+    /**
+     * Makes the metrics readable over JMX, for example from JConsole, under
+     * {@code inventory:type=Metrics,name=<name>}.
+     */
+    public void registerMetricsMBean(String name) {
+        try {
+            metrics.registerMBean(name);
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public InventoryStore getInventoryManager() {
+        return inventoryManager;
+    }
+
+    public TransactionLog getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Prints the inventory as it was when the listing started. Sales may go on meanwhile: the
+     * listing walks a snapshot, whose cursor copes with the store moving its rows.
+     */
     public void displayInventory() {
-        List<Product> products = inventoryManager.getAllProducts();
-        System.out.println("Inventory:");
-        for (Product product : products) {
-            System.out.println("Product ID: " + product.getProductId());
-            System.out.println("Product Name: " + product.getProductName());
-            System.out.println("Quantity in Stock: " + product.getQuantityInStock());
-            System.out.println("Price: " + product.getPrice());
-            System.out.println("Category: " + product.getCategory());
-            System.out.println("------------------------------");
+        try (VersionedInventoryStore.Snapshot snapshot = versions.openSnapshot()) {
+            ProductCursor product = snapshot.cursor();
+            System.out.println("Inventory:");
+            while (product.next()) {
+                System.out.println("Product ID: " + product.getProductId());
+                System.out.println("Product Name: " + product.getProductName());
+                System.out.println("Quantity in Stock: " + product.getQuantityInStock());
+                System.out.println("Price: " + product.getPrice());
+                System.out.println("Category: " + product.getCategory());
+                System.out.println("------------------------------");
+            }
         }
     }
 
     public void generateSalesReport() {
+        long started = System.nanoTime();
         salesReportGenerator.generateSalesReport();
+        salesReportTimer.recordSince(started);
     }
 
-    public boolean authenticateUser(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                return true;
-            }
+    /**
+     * Writes every transaction dated from {@code from} to {@code to} (null for no bound) to
+     * {@code filePath}, streaming the log rather than building the report in memory.
+     */
+    public void exportSalesReport(String filePath, LocalDate from, LocalDate to) {
+        long started = System.nanoTime();
+        try {
+            long written = new SalesReportExporter().export(transactions, Paths.get(filePath),
+                    SalesReportExporter.Range.between(from, to), new SalesReportExporter.Progress() {
+                        @Override
+                        public void onProgress(long scanned, long total, long written) {
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return false;
+                        }
+                    });
+            System.out.println("Sales report saved to file: " + filePath + " (" + written + " transactions)");
+        } catch (IOException e) {
+            System.err.println("Error saving sales report to file: " + e.getMessage());
         }
-        return false;
+        salesReportExportTimer.recordSince(started);
+    }
+
+    public boolean authenticateUser(String username, String password) {
+        return users.authenticate(username, password) != null;
+    }
+
+    /**
+     * Checks a username and password once and returns a session token for later operations, or
+     * null if they are wrong. See {@link UserStore#login(String, String)}.
+     */
+    public String login(String username, String password) {
+        return users.login(username, password);
     }
 
+    public User getSessionUser(String sessionToken) {
+        return users.getSessionUser(sessionToken);
+    }
+
+    public void logout(String sessionToken) {
+        users.logout(sessionToken);
+    }
+
+    /**
+     * Saves the inventory as text. Saving again to the same file writes only the products changed
+     * since, to a delta file next to it, which the load methods apply; see
+     * {@link IncrementalInventoryFile}.
+     */
     public void saveInventoryToFile(String filePath) {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            List<Product> products = inventoryManager.getAllProducts();
-            for (Product product : products) {
-                writer.write(
-                        product.getProductId() + ","
-                                + product.getProductName() + ","
-                                + product.getQuantityInStock() + ","
-                                + product.getPrice() + ","
-                                + product.getCategory() + "\n"
-                );
+        long started = System.nanoTime();
+        try {
+            Path path = Paths.get(filePath).toAbsolutePath();
+            synchronized (this) {
+                if (inventoryFile == null || !inventoryFile.getPath().equals(path)) {
+                    inventoryFile = new IncrementalInventoryFile(path, changeTracker, versions);
+                }
             }
-            System.out.println("Inventory saved to file: " + filePath);
+            long written = inventoryFile.save(null);
+            System.out.println("Inventory saved to file: " + filePath + " (" + written + " rows written)");
         } catch (IOException e) {
             System.err.println("Error saving inventory to file: " + e.getMessage());
         }
+        fileSaveTimer.recordSince(started);
+    }
+
+    /**
+     * Saves the inventory as a binary snapshot (see {@link InventorySnapshot}). Unlike the text
+     * format, the snapshot keeps product ids, and it can be reopened without parsing.
+     */
+    public void saveInventorySnapshot(String filePath) {
+        long started = System.nanoTime();
+        try (VersionedInventoryStore.Snapshot snapshot = versions.openSnapshot()) {
+            InventorySnapshot.write(snapshot.cursor(), Paths.get(filePath), -1);
+            System.out.println("Inventory snapshot saved to file: " + filePath);
+        } catch (IOException e) {
+            System.err.println("Error saving inventory snapshot to file: " + e.getMessage());
+        }
+        snapshotSaveTimer.recordSince(started);
+    }
+
+    public void loadInventorySnapshot(String filePath) {
+        long started = System.nanoTime();
+        try {
+            InventorySnapshot snapshot = InventorySnapshot.open(Paths.get(filePath));
+            snapshot.loadInto(inventoryManager);
+            snapshotJournalGeneration = snapshot.getJournalGeneration();
+            System.out.println("Inventory snapshot loaded from file: " + filePath + " (" + snapshot.size() + " products)");
+        } catch (IOException e) {
+            System.err.println("Error loading inventory snapshot from file: " + e.getMessage());
+        }
+        snapshotLoadTimer.recordSince(started);
     }
 
     public void loadInventoryFromFile(String filePath) {
+        long started = System.nanoTime();
         try {
-            List<String> lines = Files.readAllLines(Paths.get(filePath));
-            for (String line : lines) {
-                String[] parts = line.split(",");
-                int productId = Integer.parseInt(parts[0]);
-                String productName = parts[1];
-                int quantityInStock = Integer.parseInt(parts[2]);
-                double price = Double.parseDouble(parts[3]);
-                String category = parts[4];
-                Product product = new Product(productName, quantityInStock, price, category);
-                inventoryManager.addProduct(product);
-            }
-            System.out.println("Inventory loaded from file: " + filePath);
+            IncrementalInventoryFile.Delta delta = IncrementalInventoryFile.readDelta(Paths.get(filePath));
+            InventoryFileReader.RowHandler handler = (productId, productName, quantityInStock, price, category) ->
+                    inventoryManager.addProduct(new Product(productName, quantityInStock, price, category));
+            LoadReport report = new InventoryFileReader().read(Paths.get(filePath), delta.filter(handler));
+            delta.forEachAdded(handler);
+            printLoadReport(filePath, report);
+        } catch (IOException e) {
+            System.err.println("Error loading inventory from file: " + e.getMessage());
+        }
+        fileLoadTimer.recordSince(started);
+    }
+
+    /**
+     * Loads the file as upserts keyed on the product ids stored in it (see {@link InventoryMerge}):
+     * products not yet in the inventory are added under their stored ids, changed ones updated and
+     * identical ones left alone, so loading a file that was just saved changes nothing. With
+     * {@code removeMissing}, products the file does not list are removed too.
+     */
+    public void mergeInventoryFromFile(String filePath, boolean removeMissing) {
+        long started = System.nanoTime();
+        try {
+            IncrementalInventoryFile.Delta delta = IncrementalInventoryFile.readDelta(Paths.get(filePath));
+            InventoryMerge merge = new InventoryMerge(inventoryManager, removeMissing);
+            InventoryFileReader.RowHandler handler = delta.filter(merge);
+            LoadReport report = InventoryFileReader.readParallel(Paths.get(filePath), ForkJoinPool.commonPool(),
+                    rows -> rows.forEach(handler));
+            delta.forEachAdded(merge);
+            merge.apply();
+            printSkippedLines(report);
+            System.out.println("Inventory merged from file: " + filePath + " (" + merge.summary() + ")");
+        } catch (IOException e) {
+            System.err.println("Error merging inventory from file: " + e.getMessage());
+        }
+        fileMergeTimer.recordSince(started);
+    }
+
+    /**
+     * Bulk import for large feed files: chunks of the file are parsed in parallel on the common
+     * fork-join pool and added to the inventory a chunk at a time, in file order, so products are
+     * numbered exactly as loadInventoryFromFile would number them. Each chunk takes its ids from
+     * the allocator as one block.
+     */
+    public void importInventoryFromFile(String filePath) {
+        long started = System.nanoTime();
+        try {
+            IncrementalInventoryFile.Delta delta = IncrementalInventoryFile.readDelta(Paths.get(filePath));
+            LoadReport report = InventoryFileReader.readParallel(Paths.get(filePath), ForkJoinPool.commonPool(),
+                    rows -> addAsNewProducts(rows, delta));
+            InventoryFileReader.RowBatch added = new InventoryFileReader.RowBatch();
+            delta.forEachAdded(added);
+            addAsNewProducts(added, IncrementalInventoryFile.Delta.EMPTY);
+            printLoadReport(filePath, report);
         } catch (IOException e) {
             System.err.println("Error loading inventory from file: " + e.getMessage());
         }
+        fileImportTimer.recordSince(started);
+    }
+
+    // Adds the rows, as changed by the delta, under one block of new ids in a single addProducts call.
+    private void addAsNewProducts(InventoryFileReader.RowBatch rows, IncrementalInventoryFile.Delta delta) {
+        if (rows.size() == 0) {
+            return;
+        }
+        List<Product> products = new ArrayList<>(rows.size());
+        int firstId = Product.getIdAllocator().reserve(rows.size());
+        rows.forEach(delta.filter((productId, productName, quantityInStock, price, category) ->
+                products.add(new Product(firstId + products.size(), productName, quantityInStock, price, category))));
+        inventoryManager.addProducts(products);
+    }
+
+    private void printLoadReport(String filePath, LoadReport report) {
+        printSkippedLines(report);
+        System.out.println("Inventory loaded from file: " + filePath + " (" + report.getRowsLoaded() + " products)");
+    }
+
+    private void printSkippedLines(LoadReport report) {
+        for (String error : report.getErrors()) {
+            System.err.println("Skipped " + error);
+        }
+        if (report.getErrorCount() > report.getErrors().size()) {
+            System.err.println("... and " + (report.getErrorCount() - report.getErrors().size()) + " more bad lines");
+        }
     }
 
     public static void main(String[] args) {
         Main ims = new Main();
+        ims.registerMetricsMBean("Main");
+        ims.openIdAllocators("ids");
         Scanner scanner = new Scanner(System.in);
 
         // Example: Adding a user
@@ -144,6 +623,10 @@ public class Main {
             ims.addProduct(phone);
             ims.addProduct(headphones);
 
+            // Warn when any electronics item is down to its last 2 units
+            ims.getStockAlerts().setCategoryThreshold("Electronics", 2);
+            ims.getStockAlerts().addListener(alert -> System.out.println(alert));
+
             Transaction saleTransaction = new Transaction(laptop, 2, LocalDate.now(), TransactionType.SALE);
             Transaction saleTransaction1 = new Transaction(phone, 8, LocalDate.now(), TransactionType.SALE);
             Transaction saleTransaction2 = new Transaction(headphones, 9, LocalDate.now(), TransactionType.SALE);
@@ -157,7 +640,8 @@ public class Main {
 
             // Save and load inventory from a file
             ims.saveInventoryToFile("inventory.txt");
-            ims.loadInventoryFromFile("inventory.txt");
+            ims.mergeInventoryFromFile("inventory.txt", false);
+            ims.printMetrics();
         } else {
             System.out.println("Authentication failed. Exiting program.");
         }
@@ -165,20 +649,41 @@ public class Main {
 }
 
 class Product {
-    private static int nextProductId = 1;
+    private static volatile IdAllocator idAllocator = new IdAllocator.InMemory();
 
     private int productId;
     private String productName;
-    private int quantityInStock;
+    // Written under InventoryManager's stock lock; volatile so readers on other threads see it.
+    private volatile int quantityInStock;
     private double price;
     private String category;
 
     public Product(String productName, int quantityInStock, double price, String category) {
-        this.productId = nextProductId++;
+        this(idAllocator.next(), productName, quantityInStock, price, category);
+    }
+
+    /**
+     * Creates a product with a known id, e.g. one read back from storage. Later products
+     * created without an id are numbered after it.
+     */
+    public Product(int productId, String productName, int quantityInStock, double price, String category) {
+        this.productId = productId;
         this.productName = productName;
         this.quantityInStock = quantityInStock;
         this.price = price;
         this.category = category;
+        idAllocator.advancePast(productId);
+    }
+
+    /**
+     * Where products created without an id get theirs. Set this before any products are created.
+     */
+    static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
+    }
+
+    static IdAllocator getIdAllocator() {
+        return idAllocator;
     }
 
     public int getProductId() {
@@ -218,64 +723,486 @@ class Product {
     }
 }
 
-class InventoryManager {
-    private List<Product> products;
+class InventoryManager implements InventoryStore {
+    // Number of stock lock stripes; a power of two so a product id maps to a stripe with a mask.
+    private static final int STOCK_LOCK_STRIPES = 256;
+
+    // Primary index keyed by product id. Lookups and stock updates read it without locking.
+    private final Map<Integer, IndexEntry> productsById;
+    // Secondary index keyed by product name. Names are not unique (the sample inventory has two
+    // "PC" rows), so each name maps to every product carrying it, in the order they were indexed.
+    // The lists are immutable and replaced on every change so readers never see them mid-update.
+    private final Map<String, List<Product>> productsByName;
+    // Secondary index keyed by category, carrying running totals for that category.
+    private final Map<String, CategoryIndex> productsByCategory;
+
+    // Adds, updates and removals are serialized on this lock. It also guards the insertion-order
+    // list threaded through the index entries, which keeps listings stable.
+    private final Object structureLock = new Object();
+    private volatile IndexEntry first;
+    private IndexEntry last;
+
+    // Stock levels are guarded per product by one of these stripes, so sales of unrelated products
+    // only meet on the same lock when their ids happen to share a stripe.
+    private final Object[] stockLocks;
 
     public InventoryManager() {
-        this.products = new ArrayList<>();
+        this.productsById = new ConcurrentHashMap<>();
+        this.productsByName = new ConcurrentHashMap<>();
+        this.productsByCategory = new ConcurrentHashMap<>();
+        this.stockLocks = new Object[STOCK_LOCK_STRIPES];
+        for (int i = 0; i < stockLocks.length; i++) {
+            stockLocks[i] = new Object();
+        }
     }
 
+    @Override
     public void addProduct(Product product) {
-        products.add(product);
+        synchronized (structureLock) {
+            add(product);
+        }
     }
 
+    @Override
+    public void addProducts(Collection<Product> products) {
+        synchronized (structureLock) {
+            for (Product product : products) {
+                add(product);
+            }
+        }
+    }
+
+    @Override
     public void updateProduct(Product product) {
-        Product existingProduct = getProductById(product.getProductId());
-        if (existingProduct != null) {
-            existingProduct.setProductName(product.getProductName());
-            existingProduct.setQuantityInStock(product.getQuantityInStock());
-            existingProduct.setPrice(product.getPrice());
-            existingProduct.setCategory(product.getCategory());
+        int productId = product.getProductId();
+        synchronized (structureLock) {
+            IndexEntry entry = productsById.get(productId);
+            if (entry != null) {
+                synchronized (stockLock(productId)) {
+                    Product existingProduct = entry.product;
+                    existingProduct.setProductName(product.getProductName());
+                    existingProduct.setQuantityInStock(product.getQuantityInStock());
+                    existingProduct.setPrice(product.getPrice());
+                    existingProduct.setCategory(product.getCategory());
+                    reindex(entry);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        synchronized (stockLock(productId)) {
+            IndexEntry entry = productsById.get(productId);
+            if (entry != null) {
+                applyStockDelta(entry, quantityInStock - entry.indexedQuantity);
+            }
+        }
+    }
+
+    // Only the product's own lock stripe is taken, so updates to other products run in parallel.
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        synchronized (stockLock(productId)) {
+            IndexEntry entry = productsById.get(productId);
+            if (entry == null) {
+                throw new IllegalArgumentException("Unknown product id: " + productId);
+            }
+            applyStockDelta(entry, delta);
+            return entry.indexedQuantity;
         }
     }
 
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        synchronized (stockLock(productId)) {
+            IndexEntry entry = productsById.get(productId);
+            if (entry == null) {
+                throw new IllegalArgumentException("Unknown product id: " + productId);
+            }
+            applyStockDelta(entry, update.applyAsInt(entry.indexedQuantity) - entry.indexedQuantity);
+            return entry.indexedQuantity;
+        }
+    }
+
+    @Override
     public void removeProduct(int productId) {
-        products.removeIf(product -> product.getProductId() == productId);
+        synchronized (structureLock) {
+            IndexEntry removed;
+            synchronized (stockLock(productId)) {
+                removed = productsById.remove(productId);
+                if (removed != null) {
+                    unindex(removed);
+                }
+            }
+            if (removed != null) {
+                unlink(removed);
+            }
+        }
     }
 
+    @Override
     public Product getProductById(int productId) {
-        return products.stream()
-                .filter(product -> product.getProductId() == productId)
-                .findFirst()
-                .orElse(null);
+        IndexEntry entry = productsById.get(productId);
+        return entry != null ? entry.product : null;
     }
 
+    @Override
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        synchronized (structureLock) {
+            List<Product> products = new ArrayList<>(productsById.size());
+            for (IndexEntry entry = first; entry != null; entry = entry.next) {
+                products.add(entry.product);
+            }
+            return products;
+        }
     }
+
+    @Override
     public Product getProductByName(String productName) {
-        return products.stream()
-                .filter(product -> product.getProductName().equals(productName))
-                .findFirst()
-                .orElse(null);
+        List<Product> matches = productName != null ? productsByName.get(productName) : null;
+        return matches != null ? matches.get(0) : null;
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        List<Product> matches = productName != null ? productsByName.get(productName) : null;
+        return matches != null ? new ArrayList<>(matches) : new ArrayList<>();
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        CategoryIndex categoryIndex = category != null ? productsByCategory.get(category) : null;
+        return categoryIndex != null ? new ArrayList<>(categoryIndex.products) : new ArrayList<>();
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return new HashSet<>(productsByCategory.keySet());
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        CategoryIndex categoryIndex = category != null ? productsByCategory.get(category) : null;
+        if (categoryIndex == null) {
+            return new CategoryStats(category, 0, 0, 0.0);
+        }
+        return new CategoryStats(category, categoryIndex.products.size(),
+                categoryIndex.unitsInStock.sum(), categoryIndex.stockValue.sum());
+    }
+
+    @Override
+    public int size() {
+        return productsById.size();
+    }
+
+    // Walks the insertion-order links without taking the structure lock. Unlinked entries keep
+    // their forward link, so a cursor parked on a removed product still finds the rest of the
+    // list; products added or removed during the walk may or may not be seen.
+    @Override
+    public ProductCursor cursor() {
+        return new ProductCursor() {
+            private IndexEntry current;
+            private boolean started;
+
+            @Override
+            public boolean next() {
+                IndexEntry candidate = started ? (current != null ? current.next : null) : first;
+                started = true;
+                while (candidate != null && productsById.get(candidate.product.getProductId()) != candidate) {
+                    candidate = candidate.next;
+                }
+                current = candidate;
+                return current != null;
+            }
+
+            @Override
+            public int getProductId() {
+                return current.product.getProductId();
+            }
+
+            @Override
+            public String getProductName() {
+                return current.product.getProductName();
+            }
+
+            @Override
+            public int getQuantityInStock() {
+                return current.product.getQuantityInStock();
+            }
+
+            @Override
+            public double getPrice() {
+                return current.product.getPrice();
+            }
+
+            @Override
+            public String getCategory() {
+                return current.product.getCategory();
+            }
+        };
+    }
+
+    private Object stockLock(int productId) {
+        int hash = productId ^ (productId >>> 16);
+        return stockLocks[hash & (STOCK_LOCK_STRIPES - 1)];
+    }
+
+    // Caller holds the structure lock.
+    private void add(Product product) {
+        int productId = product.getProductId();
+        IndexEntry entry = new IndexEntry(product);
+        IndexEntry replaced;
+        synchronized (stockLock(productId)) {
+            replaced = productsById.get(productId);
+            if (replaced != null) {
+                unindex(replaced);
+            }
+            entry.capture();
+            index(entry);
+            productsById.put(productId, entry);
+        }
+        if (replaced != null) {
+            unlink(replaced);
+        }
+        link(entry);
+    }
+
+    // Caller holds the product's stock lock.
+    private void applyStockDelta(IndexEntry entry, int delta) {
+        entry.indexedQuantity += delta;
+        entry.product.setQuantityInStock(entry.indexedQuantity);
+        entry.categoryIndex.unitsInStock.add(delta);
+        entry.categoryIndex.stockValue.add(delta * entry.indexedPrice);
+    }
+
+    // Brings the secondary indexes in line with the product's current fields. Products are mutable
+    // and callers usually pass the very instance that is stored here, so the entry remembers the
+    // values it was indexed under instead of trusting the product.
+    // Caller holds the structure lock and the product's stock lock.
+    private void reindex(IndexEntry entry) {
+        Product product = entry.product;
+        boolean nameChanged = !Objects.equals(entry.indexedName, product.getProductName());
+        boolean stockChanged = !Objects.equals(entry.indexedCategory, product.getCategory())
+                || entry.indexedQuantity != product.getQuantityInStock()
+                || entry.indexedPrice != product.getPrice();
+        if (nameChanged) {
+            unindexName(product, entry.indexedName);
+        }
+        if (stockChanged) {
+            unindexCategory(entry);
+        }
+        entry.capture();
+        if (nameChanged) {
+            indexName(product, entry.indexedName);
+        }
+        if (stockChanged) {
+            indexCategory(entry);
+        }
+    }
+
+    private void index(IndexEntry entry) {
+        indexName(entry.product, entry.indexedName);
+        indexCategory(entry);
+    }
+
+    private void unindex(IndexEntry entry) {
+        unindexName(entry.product, entry.indexedName);
+        unindexCategory(entry);
+    }
+
+    private void indexName(Product product, String productName) {
+        if (productName == null) {
+            return;
+        }
+        List<Product> matches = productsByName.get(productName);
+        List<Product> updated = new ArrayList<>(matches != null ? matches.size() + 1 : 1);
+        if (matches != null) {
+            updated.addAll(matches);
+        }
+        updated.add(product);
+        productsByName.put(productName, Collections.unmodifiableList(updated));
+    }
+
+    private void unindexName(Product product, String productName) {
+        List<Product> matches = productName != null ? productsByName.get(productName) : null;
+        if (matches != null) {
+            List<Product> updated = new ArrayList<>(matches);
+            updated.remove(product);
+            if (updated.isEmpty()) {
+                productsByName.remove(productName);
+            } else {
+                productsByName.put(productName, Collections.unmodifiableList(updated));
+            }
+        }
+    }
+
+    private void indexCategory(IndexEntry entry) {
+        String category = entry.indexedCategory != null ? entry.indexedCategory : "";
+        CategoryIndex categoryIndex = productsByCategory.computeIfAbsent(category,
+                key -> new CategoryIndex());
+        categoryIndex.products.add(entry.product);
+        categoryIndex.unitsInStock.add(entry.indexedQuantity);
+        categoryIndex.stockValue.add(entry.indexedQuantity * entry.indexedPrice);
+        entry.categoryIndex = categoryIndex;
+    }
+
+    private void unindexCategory(IndexEntry entry) {
+        CategoryIndex categoryIndex = entry.categoryIndex;
+        if (categoryIndex != null && categoryIndex.products.remove(entry.product)) {
+            categoryIndex.unitsInStock.add(-entry.indexedQuantity);
+            categoryIndex.stockValue.add(-entry.indexedQuantity * entry.indexedPrice);
+            if (categoryIndex.products.isEmpty()) {
+                productsByCategory.remove(entry.indexedCategory != null ? entry.indexedCategory : "",
+                        categoryIndex);
+            }
+        }
+        entry.categoryIndex = null;
+    }
+
+    private void link(IndexEntry entry) {
+        entry.previous = last;
+        entry.next = null;
+        if (last != null) {
+            last.next = entry;
+        } else {
+            first = entry;
+        }
+        last = entry;
+    }
+
+    private void unlink(IndexEntry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            first = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            last = entry.previous;
+        }
+        // entry.next is left alone so cursors standing on this entry can move on.
+        entry.previous = null;
+    }
+
+    private static class IndexEntry {
+        private final Product product;
+        // Values the product was last indexed under. Guarded by the product's stock lock.
+        private String indexedName;
+        private String indexedCategory;
+        private int indexedQuantity;
+        private double indexedPrice;
+        private CategoryIndex categoryIndex;
+        // Insertion-order links, written under the structure lock. next is volatile because
+        // cursors follow it without the lock.
+        private IndexEntry previous;
+        private volatile IndexEntry next;
+
+        IndexEntry(Product product) {
+            this.product = product;
+            capture();
+        }
+
+        void capture() {
+            indexedName = product.getProductName();
+            indexedCategory = product.getCategory();
+            indexedQuantity = product.getQuantityInStock();
+            indexedPrice = product.getPrice();
+        }
+    }
+
+    private static class CategoryIndex {
+        private final Set<Product> products = ConcurrentHashMap.newKeySet();
+        private final LongAdder unitsInStock = new LongAdder();
+        private final DoubleAdder stockValue = new DoubleAdder();
+    }
+}
+
+class CategoryStats {
+    private String category;
+    private int productCount;
+    private long unitsInStock;
+    private double stockValue;
+
+    public CategoryStats(String category, int productCount, long unitsInStock, double stockValue) {
+        this.category = category;
+        this.productCount = productCount;
+        this.unitsInStock = unitsInStock;
+        this.stockValue = stockValue;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    public long getUnitsInStock() {
+        return unitsInStock;
+    }
+
+    public double getStockValue() {
+        return stockValue;
     }
 }
 
 class Transaction {
-    private static int nextTransactionId = 1;
+    private static volatile IdAllocator idAllocator = new IdAllocator.InMemory();
 
     private int transactionId;
     private Product product;
     private int quantity;
     private LocalDate date;
     private TransactionType type;
+    // The product's price when the transaction was created, in cents (see Money).
+    private long unitPriceCents;
+    private long amountCents;
 
     public Transaction(Product product, int quantity, LocalDate date, TransactionType type) {
-        this.transactionId = nextTransactionId++;
+        this(idAllocator.next(), product, quantity, date, type);
+    }
+
+    /**
+     * Recreates a transaction with a known id, e.g. one replayed from the journal, at the product's
+     * current price. Later transactions created without an id are numbered after it.
+     */
+    public Transaction(int transactionId, Product product, int quantity, LocalDate date, TransactionType type) {
+        this(transactionId, product, quantity, date, type, Money.toCents(product.getPrice()));
+    }
+
+    /**
+     * Recreates a transaction with a known id and unit price, e.g. one read back from a compacted
+     * record of the transaction log.
+     *
+     * @throws IllegalArgumentException if the quantity times the unit price does not fit in cents
+     */
+    public Transaction(int transactionId, Product product, int quantity, LocalDate date, TransactionType type,
+                       long unitPriceCents) {
+        // Checked here, so the amount cannot fail once stock and the log have been updated.
+        try {
+            this.amountCents = Money.times(quantity, unitPriceCents);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Transaction value too large: " + quantity + " x "
+                    + Money.format(unitPriceCents));
+        }
+        this.transactionId = transactionId;
         this.product = product;
         this.quantity = quantity;
         this.date = date;
         this.type = type;
+        this.unitPriceCents = unitPriceCents;
+        idAllocator.advancePast(transactionId);
+    }
+
+    /**
+     * Where transactions created without an id get theirs. Set this before any transactions are
+     * created.
+     */
+    static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
     }
 
     public int getTransactionId() {
@@ -297,6 +1224,17 @@ class Transaction {
     public TransactionType getType() {
         return type;
     }
+
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    /**
+     * The quantity times the unit price, in cents.
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
 }
 
 enum TransactionType {
@@ -304,20 +1242,27 @@ enum TransactionType {
 }
 
 class User {
-    private static int nextUserId = 1;
+    private static volatile IdAllocator idAllocator = new IdAllocator.InMemory();
 
     private int userId;
     private String username;
-    private String password;
+    private PasswordHash passwordHash;
     private UserRole role;
 
     public User(String username, String password, UserRole role) {
-        this.userId = nextUserId++;
+        this.userId = idAllocator.next();
         this.username = username;
-        this.password = password;
+        this.passwordHash = PasswordHash.create(password);
         this.role = role;
     }
 
+    /**
+     * Where new users get their ids. Set this before any users are created.
+     */
+    static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
+    }
+
     public int getUserId() {
         return userId;
     }
@@ -326,8 +1271,8 @@ class User {
         return username;
     }
 
-    public String getPassword() {
-        return password;
+    public boolean checkPassword(String password) {
+        return passwordHash.matches(password);
     }
 
     public UserRole getRole() {
@@ -340,15 +1285,74 @@ enum UserRole {
 }
 
 class SalesReportGenerator {
-    private List<Transaction> transactions;
+    private TransactionLog transactions;
+    private InventoryStore products;
+    private SalesAggregates aggregates;
 
-    public SalesReportGenerator(List<Transaction> transactions) {
+    /**
+     * Reports on the transactions in {@code transactions}, naming products as {@code products}
+     * has them when the report is built.
+     */
+    public SalesReportGenerator(TransactionLog transactions, InventoryStore products) {
         this.transactions = transactions;
+        this.products = products;
+        this.aggregates = new SalesAggregates();
+        for (Transaction transaction : transactions) {
+            aggregates.add(transaction);
+        }
+        transactions.addListener(aggregates::add);
+    }
+
+    public SalesAggregates getAggregates() {
+        return aggregates;
     }
 
     public void generateSalesReport() {
-        System.out.println("Sales Report:");
-        for (Transaction transaction : transactions) {
+        System.out.print(buildSalesReport());
+    }
+
+    /**
+     * Builds the sales report from the running aggregates. Its cost depends on how many days and
+     * products had transactions, not on how many transactions were recorded.
+     */
+    public String buildSalesReport() {
+        StringBuilder report = new StringBuilder("Sales Report:\n");
+        SalesAggregates.Totals overall = aggregates.getOverall();
+        report.append("Transactions: ").append(overall.getTransactionCount()).append("\n");
+        for (TransactionType type : TransactionType.values()) {
+            appendTotals(report, type + ": ", overall, type);
+        }
+        report.append("------------------------------\n");
+
+        report.append("By Day:\n");
+        for (Map.Entry<LocalDate, SalesAggregates.Totals> day : aggregates.getByDay().entrySet()) {
+            report.append(day.getKey()).append("\n");
+            for (TransactionType type : TransactionType.values()) {
+                appendTotals(report, "  " + type + ": ", day.getValue(), type);
+            }
+        }
+        report.append("------------------------------\n");
+
+        report.append("By Product:\n");
+        for (Map.Entry<Integer, SalesAggregates.Totals> totals : aggregates.getByProduct().entrySet()) {
+            Product product = products.getProductById(totals.getKey());
+            report.append(product != null ? product.getProductName() : "(removed product)")
+                    .append(" (ID ").append(totals.getKey()).append(")\n");
+            for (TransactionType type : TransactionType.values()) {
+                appendTotals(report, "  " + type + ": ", totals.getValue(), type);
+            }
+        }
+        report.append("------------------------------\n");
+        return report.toString();
+    }
+
+    /**
+     * Prints every transaction recorded so far, one block each, from a snapshot of the log. This
+     * walks the whole log; prefer {@link #generateSalesReport()} for large histories.
+     */
+    public void printTransactions() {
+        System.out.println("Transactions:");
+        for (Transaction transaction : transactions.snapshot()) {
             System.out.println("Transaction ID: " + transaction.getTransactionId());
             System.out.println("Product: " + transaction.getProduct().getProductName());
             System.out.println("Quantity: " + transaction.getQuantity());
@@ -357,4 +1361,12 @@ class SalesReportGenerator {
             System.out.println("------------------------------");
         }
     }
+
+    private static void appendTotals(StringBuilder report, String label, SalesAggregates.Totals totals,
+                                     TransactionType type) {
+        report.append(label)
+                .append(totals.getTransactionCount(type)).append(" transactions, ")
+                .append(totals.getUnits(type)).append(" units, value ")
+                .append(Money.format(totals.getValueCents(type))).append("\n");
+    }
 }
@@ -0,0 +1,333 @@
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and latency timers for the hot paths. Recording is a few uncontended adds, so
+ * it is cheap enough to leave on in production. The current values can be read over JMX (see
+ * {@link #registerMBean(String)}) or dumped as text in the Prometheus exposition format.
+ *
+ * Timers keep a histogram with eight buckets per power of two, so percentiles are accurate to
+ * within about 6% without storing individual samples.
+ */
+class Metrics {
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the counter with this name, creating it on first use. Names follow Prometheus
+     * conventions, such as {@code inventory_transactions_recorded_total}.
+     */
+    public Counter counter(String name, String help) {
+        return counters.computeIfAbsent(name, key -> new Counter(key, help));
+    }
+
+    /**
+     * Returns the timer with this name, creating it on first use. Names should end in
+     * {@code _seconds}, the unit the text dump reports them in.
+     */
+    public Timer timer(String name, String help) {
+        return timers.computeIfAbsent(name, key -> new Timer(key, help));
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format. Timers are written as summaries
+     * with the 0.5, 0.9, 0.99 and 0.999 quantiles.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Counter counter : counters.values()) {
+            out.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+            out.append("# TYPE ").append(counter.name).append(" counter\n");
+            out.append(counter.name).append(' ').append(Long.toString(counter.get())).append('\n');
+        }
+        for (Timer timer : timers.values()) {
+            Timer.Snapshot snapshot = timer.snapshot();
+            out.append("# HELP ").append(timer.name).append(' ').append(timer.help).append('\n');
+            out.append("# TYPE ").append(timer.name).append(" summary\n");
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                out.append(timer.name).append("{quantile=\"").append(Double.toString(quantile)).append("\"} ")
+                        .append(seconds(snapshot.percentile(quantile))).append('\n');
+            }
+            out.append(timer.name).append("_sum ").append(seconds(snapshot.getTotalNanos())).append('\n');
+            out.append(timer.name).append("_count ").append(Long.toString(snapshot.getCount())).append('\n');
+        }
+    }
+
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        try {
+            writePrometheus(text);
+        } catch (IOException e) {
+            throw new AssertionError("StringBuilder does not throw", e);
+        }
+        return text.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as {@code inventory:type=Metrics,name=<name>}.
+     * Each counter appears as an attribute holding its count; each timer as {@code <name>.count},
+     * {@code .meanMicros}, {@code .p50Micros}, {@code .p99Micros}, {@code .p999Micros} and
+     * {@code .maxMicros}. Metrics created after registration show up as well.
+     */
+    public void registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("inventory:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+    }
+
+    static class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Latency histogram. Durations are recorded in nanoseconds; values up to 7 get a bucket each,
+     * and above that each power of two is split into eight buckets.
+     */
+    static class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final String name;
+        private final String help;
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private Timer(String name, String help) {
+            this.name = name;
+            this.help = help;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one operation that started at {@code startNanos}, a {@link System#nanoTime()} value.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[bucket(value)].increment();
+            count.increment();
+            totalNanos.add(value);
+            if (value > maxNanos.get()) {
+                maxNanos.accumulate(value);
+            }
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int highestBit = 63 - Long.numberOfLeadingZeros(value);
+            int shift = highestBit - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+        }
+
+        // Midpoint of the values a bucket covers.
+        private static long bucketValue(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+            long low = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+            return low + ((1L << shift) >>> 1);
+        }
+
+        /**
+         * Copies the current counts. Operations recorded while the copy is taken may be only
+         * partly included.
+         */
+        public Snapshot snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            return new Snapshot(counts, total, totalNanos.sum(), maxNanos.get());
+        }
+
+        static class Snapshot {
+            private final long[] counts;
+            private final long count;
+            private final long totalNanos;
+            private final long maxNanos;
+
+            private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+                this.counts = counts;
+                this.count = count;
+                this.totalNanos = totalNanos;
+                this.maxNanos = maxNanos;
+            }
+
+            public long getCount() {
+                return count;
+            }
+
+            public long getTotalNanos() {
+                return totalNanos;
+            }
+
+            public long getMaxNanos() {
+                return maxNanos;
+            }
+
+            public long getMeanNanos() {
+                return count == 0 ? 0 : totalNanos / count;
+            }
+
+            /**
+             * Returns the duration below which the given fraction (0 to 1) of operations fell.
+             */
+            public long percentile(double quantile) {
+                if (count == 0) {
+                    return 0;
+                }
+                long rank = Math.max(1, (long) Math.ceil(quantile * count));
+                long seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        return Math.min(bucketValue(i), maxNanos);
+                    }
+                }
+                return maxNanos;
+            }
+        }
+    }
+
+    /**
+     * Read-only view of the metrics for JMX, built from whatever metrics exist when it is asked.
+     */
+    private class MetricsMBean implements DynamicMBean {
+        private static final String COUNT = ".count";
+        private static final String MEAN = ".meanMicros";
+        private static final String P50 = ".p50Micros";
+        private static final String P99 = ".p99Micros";
+        private static final String P999 = ".p999Micros";
+        private static final String MAX = ".maxMicros";
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.get();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Timer timer = dot < 0 ? null : timers.get(attribute.substring(0, dot));
+            if (timer == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            Timer.Snapshot snapshot = timer.snapshot();
+            switch (attribute.substring(dot)) {
+                case COUNT:
+                    return snapshot.getCount();
+                case MEAN:
+                    return snapshot.getMeanNanos() / 1_000.0;
+                case P50:
+                    return snapshot.percentile(0.5) / 1_000.0;
+                case P99:
+                    return snapshot.percentile(0.99) / 1_000.0;
+                case P999:
+                    return snapshot.percentile(0.999) / 1_000.0;
+                case MAX:
+                    return snapshot.getMaxNanos() / 1_000.0;
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Unknown names are left out, as the DynamicMBean contract allows.
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            if ("prometheusText".equals(actionName)) {
+                return toPrometheusText();
+            }
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Counter counter : counters.values()) {
+                attributes.add(new MBeanAttributeInfo(counter.name, "long", counter.help, true, false, false));
+            }
+            for (Timer timer : timers.values()) {
+                attributes.add(new MBeanAttributeInfo(timer.name + COUNT, "long", timer.help, true, false, false));
+                for (String suffix : new String[]{MEAN, P50, P99, P999, MAX}) {
+                    attributes.add(new MBeanAttributeInfo(timer.name + suffix, "double", timer.help, true, false, false));
+                }
+            }
+            MBeanOperationInfo dump = new MBeanOperationInfo("prometheusText",
+                    "All metrics in the Prometheus text format", null, "java.lang.String", MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metrics.class.getName(), "Inventory system metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{dump}, null);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Amounts of money as a {@code long} number of cents. Sums of cents are exact, where sums of
+ * {@code double} prices drift by a fraction of a cent every few additions. Prices are still kept
+ * as {@code double} on {@link Product}; they are converted here, rounding to the nearest cent, at
+ * the moment a transaction is recorded.
+ */
+final class Money {
+    private Money() {
+    }
+
+    /**
+     * Rounds {@code amount} to the nearest cent.
+     *
+     * @throws IllegalArgumentException if {@code amount} is not a number or too large for cents
+     */
+    public static long toCents(double amount) {
+        double cents = Math.rint(amount * 100);
+        if (Double.isNaN(cents) || Math.abs(cents) >= 0x1p63) {
+            throw new IllegalArgumentException("Not a money amount: " + amount);
+        }
+        return (long) cents;
+    }
+
+    /**
+     * Returns {@code quantity} times {@code cents}.
+     *
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long times(int quantity, long cents) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    /**
+     * Formats cents as a decimal amount, such as "1234.50" or "-0.05".
+     */
+    public static String format(long cents) {
+        long whole = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+        return (cents < 0 ? "-" : "") + whole + "." + (fraction < 10 ? "0" : "") + fraction;
+    }
+}
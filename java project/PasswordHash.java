@@ -0,0 +1,66 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * A salted PBKDF2 hash of a password. The password itself is never kept; checking one means
+ * hashing it again with the same salt and comparing the results in constant time, so neither
+ * the stored hash nor the time taken says how much of a wrong guess was right.
+ *
+ * Hashing is deliberately slow (tens of milliseconds), which is what makes a stolen hash
+ * expensive to attack. Callers that need to check the same user repeatedly should keep a
+ * session instead; see {@link UserStore}.
+ */
+final class PasswordHash {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 100_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] salt;
+    // Kept with the hash so the work factor can be raised without breaking existing hashes.
+    private final int iterations;
+    private final byte[] hash;
+
+    private PasswordHash(byte[] salt, int iterations, byte[] hash) {
+        this.salt = salt;
+        this.iterations = iterations;
+        this.hash = hash;
+    }
+
+    /**
+     * Hashes {@code password} with a fresh random salt.
+     */
+    public static PasswordHash create(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return new PasswordHash(salt, DEFAULT_ITERATIONS, derive(password, salt, DEFAULT_ITERATIONS));
+    }
+
+    /**
+     * Returns whether {@code password} is the one this hash was made from. A null password
+     * never matches, but still costs a full hash.
+     */
+    public boolean matches(String password) {
+        byte[] candidate = derive(password == null ? "" : password, salt, iterations);
+        return MessageDigest.isEqual(hash, candidate) && password != null;
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        char[] chars = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // PBKDF2WithHmacSHA256 is one of the algorithms every Java platform must provide.
+            throw new IllegalStateException("Cannot hash password: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+}
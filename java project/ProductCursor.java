@@ -0,0 +1,27 @@
+/**
+ * Read-only, forward-only view over the rows of an {@link InventoryStore}. The getters
+ * describe the row the last successful {@link #next()} moved to; no Product is created.
+ *
+ * <pre>
+ * ProductCursor cursor = inventoryStore.cursor();
+ * while (cursor.next()) {
+ *     System.out.println(cursor.getProductName());
+ * }
+ * </pre>
+ */
+interface ProductCursor {
+    /**
+     * Moves to the next row and returns false once the catalogue is exhausted.
+     */
+    boolean next();
+
+    int getProductId();
+
+    String getProductName();
+
+    int getQuantityInStock();
+
+    double getPrice();
+
+    String getCategory();
+}
@@ -0,0 +1,452 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Case-insensitive typeahead search over product names, and over the set of categories.
+ *
+ * Names are indexed by their three-character grams, plus grams marking the first one or two
+ * characters of the name and of each word in it. Each gram has a posting list of product ids in
+ * ascending order. A query walks the intersection of the lists for its own grams, jumping ahead
+ * in the longer lists by galloping search, and checks each candidate against the product's
+ * current name; it stops as soon as it has enough results, so a query for a common prefix costs
+ * about as much as one for a rare word. Results come in three tiers: names starting with the
+ * query, then names with a word starting with it, then (for queries of three characters or more)
+ * names containing it anywhere. Queries of one or two characters match only the start of the
+ * name or of a word.
+ *
+ * The index is kept up to date by {@link SearchableInventoryStore}. Posting lists are only ever
+ * appended to: renaming or removing a product leaves its old entries behind, where they fail the
+ * check against the current name. Once stale entries outnumber live ones the index is rebuilt
+ * from the store.
+ */
+class ProductSearchIndex {
+    // Gram characters that cannot appear in names: the start of the name and the start of a word.
+    private static final char NAME_START = '\u0001';
+    private static final char WORD_START = '\u0002';
+    private static final long MIN_POSTINGS_BEFORE_REBUILD = 1L << 16;
+
+    private final InventoryStore store;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final GramTable postings = new GramTable();
+    private final Map<String, Integer> categoryCounts = new HashMap<>();
+    private long totalPostings;
+    private long livePostings;
+
+    /**
+     * @param store where candidates are checked against the products' current names; the index
+     *              must be fed every change to it, normally by wrapping it in a
+     *              {@link SearchableInventoryStore}
+     */
+    public ProductSearchIndex(InventoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Indexes a product that is now in the store.
+     */
+    public void add(int productId, String productName, String category) {
+        lock.writeLock().lock();
+        try {
+            addLocked(productId, productName, category);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes products that are now in the store, taking the lock once for all of them.
+     */
+    public void addAll(Collection<Product> products) {
+        lock.writeLock().lock();
+        try {
+            for (Product product : products) {
+                addLocked(product.getProductId(), product.getProductName(), product.getCategory());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that a product with this name and category is no longer in the store, or no longer
+     * has them.
+     */
+    public void remove(int productId, String productName, String category) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(productName, category);
+            if (totalPostings > MIN_POSTINGS_BEFORE_REBUILD && totalPostings > 2 * livePostings) {
+                rebuildLocked();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reindexes a product whose name or category changed from the old values to the new ones.
+     */
+    public void update(int productId, String oldName, String oldCategory, String newName, String newCategory) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(oldName, oldCategory);
+            addLocked(productId, newName, newCategory);
+            if (totalPostings > MIN_POSTINGS_BEFORE_REBUILD && totalPostings > 2 * livePostings) {
+                rebuildLocked();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Throws the index away and indexes every product in the store again.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            rebuildLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        postings.clear();
+        categoryCounts.clear();
+        totalPostings = 0;
+        livePostings = 0;
+        ProductCursor product = store.cursor();
+        while (product.next()) {
+            addLocked(product.getProductId(), product.getProductName(), product.getCategory());
+        }
+    }
+
+    private void addLocked(int productId, String productName, String category) {
+        if (category != null) {
+            categoryCounts.merge(category, 1, Integer::sum);
+        }
+        if (productName == null) {
+            return;
+        }
+        char[] text = lowerCase(productName);
+        int length = text.length;
+        if (length >= 1) {
+            append(gram(NAME_START, NAME_START, text[0]), productId);
+        }
+        if (length >= 2) {
+            append(gram(NAME_START, text[0], text[1]), productId);
+        }
+        for (int i = 0; i < length; i++) {
+            if (isWordStart(text, i)) {
+                append(gram(WORD_START, WORD_START, text[i]), productId);
+                if (i + 1 < length) {
+                    append(gram(WORD_START, text[i], text[i + 1]), productId);
+                }
+            }
+            if (i + 2 < length) {
+                append(gram(text[i], text[i + 1], text[i + 2]), productId);
+            }
+        }
+        livePostings += gramCount(text);
+    }
+
+    private void removeLocked(String productName, String category) {
+        if (category != null) {
+            categoryCounts.computeIfPresent(category, (key, count) -> count == 1 ? null : count - 1);
+        }
+        if (productName != null) {
+            livePostings -= gramCount(lowerCase(productName));
+        }
+    }
+
+    private void append(long gram, int productId) {
+        if (postings.getOrCreate(gram).add(productId)) {
+            totalPostings++;
+        }
+    }
+
+    // Upper bound on what addLocked appends for this text, kept in step with it.
+    private static int gramCount(char[] text) {
+        int length = text.length;
+        int count = Math.min(length, 2) + Math.max(0, length - 2);
+        for (int i = 0; i < length; i++) {
+            if (isWordStart(text, i)) {
+                count += i + 1 < length ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns up to {@code limit} products matching {@code query}, best matches first.
+     */
+    public List<Product> search(String query, int limit) {
+        List<Product> results = new ArrayList<>(Math.min(limit, 64));
+        if (query == null || limit <= 0) {
+            return results;
+        }
+        char[] text = lowerCase(query.trim());
+        if (text.length == 0) {
+            return results;
+        }
+        Set<Integer> found = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (int tier = 0; tier < 3 && results.size() < limit; tier++) {
+                if (tier == 2 && text.length < 3) {
+                    break;
+                }
+                Postings[] lists = listsFor(text, tier);
+                if (lists != null) {
+                    collect(lists, text, tier, limit, results, found);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    // Walks the ids present in every list, adding the products that match the tier.
+    private void collect(Postings[] lists, char[] query, int tier, int limit, List<Product> results,
+                         Set<Integer> found) {
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        Postings smallest = lists[0];
+        int[] positions = new int[lists.length];
+        while (positions[0] < smallest.size) {
+            int productId = smallest.ids[positions[0]];
+            int ahead = productId;
+            for (int j = 1; j < lists.length && ahead == productId; j++) {
+                positions[j] = lists[j].seek(positions[j], productId);
+                if (positions[j] == lists[j].size) {
+                    return;
+                }
+                ahead = lists[j].ids[positions[j]];
+            }
+            if (ahead != productId) {
+                positions[0] = smallest.seek(positions[0], ahead);
+                continue;
+            }
+            positions[0]++;
+            if (found.contains(productId)) {
+                continue;
+            }
+            Product product = store.getProductById(productId);
+            if (product != null && matches(product.getProductName(), query, tier)) {
+                results.add(product);
+                found.add(productId);
+                if (results.size() == limit) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} categories matching {@code query}: those starting with it first,
+     * then those containing it, each group in alphabetical order.
+     */
+    public List<String> searchCategories(String query, int limit) {
+        List<String> starting = new ArrayList<>();
+        List<String> containing = new ArrayList<>();
+        if (query == null || limit <= 0) {
+            return starting;
+        }
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            for (String category : categoryCounts.keySet()) {
+                String lower = category.toLowerCase(Locale.ROOT);
+                if (lower.startsWith(needle)) {
+                    starting.add(category);
+                } else if (lower.contains(needle)) {
+                    containing.add(category);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        starting.sort(String.CASE_INSENSITIVE_ORDER);
+        containing.sort(String.CASE_INSENSITIVE_ORDER);
+        starting.addAll(containing);
+        return starting.size() > limit ? new ArrayList<>(starting.subList(0, limit)) : starting;
+    }
+
+    // The posting lists every match of this tier must be in, or null if one of them is empty.
+    private Postings[] listsFor(char[] query, int tier) {
+        List<Long> grams = new ArrayList<>();
+        if (tier < 2) {
+            char marker = tier == 0 ? NAME_START : WORD_START;
+            grams.add(query.length == 1 ? gram(marker, marker, query[0]) : gram(marker, query[0], query[1]));
+        }
+        for (int i = 0; i + 2 < query.length; i++) {
+            grams.add(gram(query[i], query[i + 1], query[i + 2]));
+        }
+        Postings[] lists = new Postings[grams.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(grams.get(i));
+            if (lists[i] == null || lists[i].size == 0) {
+                return null;
+            }
+        }
+        return lists;
+    }
+
+    private static boolean matches(String productName, char[] query, int tier) {
+        if (productName == null) {
+            return false;
+        }
+        char[] text = lowerCase(productName);
+        for (int start = 0; start + query.length <= text.length; start++) {
+            if (tier == 0 && start > 0) {
+                return false;
+            }
+            if (tier == 1 && !isWordStart(text, start)) {
+                continue;
+            }
+            if (regionMatches(text, start, query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(char[] text, int start, char[] query) {
+        for (int i = 0; i < query.length; i++) {
+            if (text[start + i] != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordStart(char[] text, int i) {
+        return Character.isLetterOrDigit(text[i]) && (i == 0 || !Character.isLetterOrDigit(text[i - 1]));
+    }
+
+    // Lower-cases char by char, so positions in the result line up with positions in the original.
+    private static char[] lowerCase(String value) {
+        char[] text = value.toCharArray();
+        for (int i = 0; i < text.length; i++) {
+            text[i] = Character.toLowerCase(text[i]);
+        }
+        return text;
+    }
+
+    private static long gram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    // Sorted, duplicate-free list of product ids. Ids mostly arrive in increasing order, so adding
+    // is nearly always an append.
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        private boolean add(int productId) {
+            int at = size;
+            if (size > 0 && ids[size - 1] >= productId) {
+                at = Arrays.binarySearch(ids, 0, size, productId);
+                if (at >= 0) {
+                    return false;
+                }
+                at = -at - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = productId;
+            size++;
+            return true;
+        }
+
+        // Index of the first id at or after position from that is >= target, or size if none is.
+        private int seek(int from, int target) {
+            if (from >= size || ids[from] >= target) {
+                return from;
+            }
+            int low = from;
+            int step = 1;
+            while (low + step < size && ids[low + step] < target) {
+                low += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(ids, low + 1, Math.min(low + step + 1, size), target);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    // Open-addressing map from gram to posting list; a HashMap would box every gram looked up.
+    private static class GramTable {
+        private long[] keys = new long[1 << 12];
+        private Postings[] values = new Postings[1 << 12];
+        private int size;
+
+        private Postings get(long gram) {
+            int mask = keys.length - 1;
+            for (int slot = hash(gram) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == gram) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        private Postings getOrCreate(long gram) {
+            int mask = keys.length - 1;
+            int slot = hash(gram) & mask;
+            for (; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == gram) {
+                    return values[slot];
+                }
+            }
+            Postings list = new Postings();
+            keys[slot] = gram;
+            values[slot] = list;
+            if (++size > keys.length / 2) {
+                resize();
+            }
+            return list;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Postings[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private void clear() {
+            keys = new long[1 << 12];
+            values = new Postings[1 << 12];
+            size = 0;
+        }
+
+        private static int hash(long gram) {
+            long h = gram * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running sales totals by transaction type, by day and by product, updated as each transaction
+ * is recorded. Reading any total is constant time, and listing the days or products that had
+ * activity costs time proportional to how many there are, never to the length of the history.
+ * Safe to update from several threads at once.
+ *
+ * Transaction values are quantity times the unit price the transaction was recorded at, summed
+ * exactly in cents (see {@link Money}).
+ */
+class SalesAggregates {
+    private final Totals overall = new Totals();
+    private final NavigableMap<LocalDate, Totals> byDay = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Totals> byProduct = new ConcurrentHashMap<>();
+
+    public void add(Transaction transaction) {
+        long value = transaction.getAmountCents();
+        overall.add(transaction.getType(), transaction.getQuantity(), value);
+        byDay.computeIfAbsent(transaction.getDate(), date -> new Totals())
+                .add(transaction.getType(), transaction.getQuantity(), value);
+        byProduct.computeIfAbsent(transaction.getProduct().getProductId(), productId -> new Totals())
+                .add(transaction.getType(), transaction.getQuantity(), value);
+    }
+
+    public Totals getOverall() {
+        return overall;
+    }
+
+    /**
+     * Returns the totals for each day that had transactions, in date order.
+     */
+    public NavigableMap<LocalDate, Totals> getByDay() {
+        return Collections.unmodifiableNavigableMap(byDay);
+    }
+
+    /**
+     * Returns the totals for each day from {@code from} to {@code to}, both inclusive.
+     */
+    public NavigableMap<LocalDate, Totals> getByDay(LocalDate from, LocalDate to) {
+        return Collections.unmodifiableNavigableMap(byDay.subMap(from, true, to, true));
+    }
+
+    /**
+     * Returns the totals for each product that had transactions, by product id. Only the id is
+     * kept, so look the product up when its name is needed; the one a transaction carried may be
+     * a copy made before a later rename.
+     */
+    public Map<Integer, Totals> getByProduct() {
+        return Collections.unmodifiableMap(byProduct);
+    }
+
+    public Totals getProductTotals(int productId) {
+        return byProduct.get(productId);
+    }
+
+    /**
+     * Transaction count, units and value for each transaction type.
+     */
+    static class Totals {
+        private final Map<TransactionType, LongAdder> counts = new EnumMap<>(TransactionType.class);
+        private final Map<TransactionType, LongAdder> units = new EnumMap<>(TransactionType.class);
+        private final Map<TransactionType, LongAdder> values = new EnumMap<>(TransactionType.class);
+
+        Totals() {
+            for (TransactionType type : TransactionType.values()) {
+                counts.put(type, new LongAdder());
+                units.put(type, new LongAdder());
+                values.put(type, new LongAdder());
+            }
+        }
+
+        void add(TransactionType type, int quantity, long valueCents) {
+            counts.get(type).increment();
+            units.get(type).add(quantity);
+            values.get(type).add(valueCents);
+        }
+
+        // Adds the totals of several transactions at once.
+        void add(TransactionType type, long count, long quantity, long valueCents) {
+            counts.get(type).add(count);
+            units.get(type).add(quantity);
+            values.get(type).add(valueCents);
+        }
+
+        public long getTransactionCount(TransactionType type) {
+            return counts.get(type).sum();
+        }
+
+        public long getTransactionCount() {
+            long total = 0;
+            for (LongAdder count : counts.values()) {
+                total += count.sum();
+            }
+            return total;
+        }
+
+        public long getUnits(TransactionType type) {
+            return units.get(type).sum();
+        }
+
+        /**
+         * The value of the transactions of this type, in cents.
+         */
+        public long getValueCents(TransactionType type) {
+            return values.get(type).sum();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams the per-transaction sales report to a file in fixed-size chunks, so exporting years of
+ * history needs a constant amount of heap. The output can be limited to a date range and to one
+ * page of the matching transactions. The export reports progress and can be cancelled between
+ * chunks; it writes to a temporary file that only replaces the target once complete. It reads a
+ * {@link TransactionLog.Snapshot}, so sales recorded during a long export do not end up in it.
+ */
+class SalesReportExporter {
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    interface Progress {
+        /**
+         * Called after each chunk is written with the number of transactions looked at so far, how
+         * many the snapshot holds in the months covered, and how many
+         * transactions were written.
+         */
+        void onProgress(long scanned, long total, long written);
+
+        boolean isCancelled();
+    }
+
+    /**
+     * Which transactions to export: those dated from {@code from} to {@code to} (both inclusive,
+     * null for no bound), skipping the first {@code offset} matches and writing at most
+     * {@code limit} of them (negative for no limit).
+     */
+    static class Range {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long offset;
+        private final long limit;
+
+        public Range(LocalDate from, LocalDate to, long offset, long limit) {
+            this.from = from;
+            this.to = to;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        public static Range all() {
+            return new Range(null, null, 0, -1);
+        }
+
+        public static Range between(LocalDate from, LocalDate to) {
+            return new Range(from, to, 0, -1);
+        }
+    }
+
+    /**
+     * Writes the report of the transactions in the log when the export starts.
+     */
+    public long export(TransactionLog transactions, Path path, Range range, Progress progress) throws IOException {
+        return export(transactions.snapshot(), path, range, progress);
+    }
+
+    /**
+     * Writes the report and returns how many transactions it contains.
+     *
+     * @throws CancellationException if {@code progress} asked to cancel; the target is left untouched
+     */
+    public long export(TransactionLog.Snapshot transactions, Path path, Range range, Progress progress)
+            throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = AtomicFiles.createTempFileFor(absolute);
+        try {
+            long written;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                written = writeReport(transactions, channel, range, progress);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private long writeReport(TransactionLog.Snapshot transactions, FileChannel channel, Range range, Progress progress)
+            throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) (CHUNK_CHARS * encoder.maxBytesPerChar()) + 1024);
+        StringBuilder chunk = new StringBuilder(CHUNK_CHARS + 1024);
+        long total = transactions.countBetween(range.from, range.to);
+        long scanned = 0;
+        long written = 0;
+
+        chunk.append("Sales Report:\n");
+        for (Transaction transaction : transactions.between(range.from, range.to)) {
+            if (range.limit >= 0 && written >= range.limit) {
+                break;
+            }
+            if (scanned++ < range.offset) {
+                continue;
+            }
+            chunk.append("Transaction ID: ").append(transaction.getTransactionId()).append('\n');
+            chunk.append("Product: ").append(transaction.getProduct().getProductName()).append('\n');
+            chunk.append("Quantity: ").append(transaction.getQuantity()).append('\n');
+            chunk.append("Date: ").append(transaction.getDate()).append('\n');
+            chunk.append("Transaction Type: ").append(transaction.getType()).append('\n');
+            chunk.append("------------------------------\n");
+            written++;
+            if (chunk.length() >= CHUNK_CHARS) {
+                flush(chunk, encoder, bytes, channel);
+                progress.onProgress(scanned, total, written);
+                if (progress.isCancelled()) {
+                    throw new CancellationException("Sales report export cancelled");
+                }
+            }
+        }
+        flush(chunk, encoder, bytes, channel);
+        progress.onProgress(scanned, total, written);
+        return written;
+    }
+
+    private static void flush(StringBuilder chunk, CharsetEncoder encoder, ByteBuffer bytes, FileChannel channel)
+            throws IOException {
+        CharBuffer chars = CharBuffer.wrap(chunk);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            drain(bytes, channel);
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(bytes, channel);
+        }
+        drain(bytes, channel);
+        chunk.setLength(0);
+    }
+
+    private static void drain(ByteBuffer bytes, FileChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
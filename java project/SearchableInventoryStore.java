@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Wraps another {@link InventoryStore} and keeps a {@link ProductSearchIndex} in step with it.
+ * Only adding, removing and renaming or recategorising products touch the index; stock changes
+ * go straight through. The old name and category are read before each write, so a write racing
+ * with it on another thread can leave a stale entry, which the index skips when searching.
+ */
+class SearchableInventoryStore implements InventoryStore {
+    private final InventoryStore store;
+    private final ProductSearchIndex index;
+
+    public SearchableInventoryStore(InventoryStore store, ProductSearchIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    public ProductSearchIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        // Copied out first: InventoryManager hands back its own instance, which the write may change.
+        Product before = store.getProductById(product.getProductId());
+        String oldName = before != null ? before.getProductName() : null;
+        String oldCategory = before != null ? before.getCategory() : null;
+        store.addProduct(product);
+        if (before == null) {
+            index.add(product.getProductId(), product.getProductName(), product.getCategory());
+        } else {
+            reindex(product, oldName, oldCategory);
+        }
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        List<String[]> replaced = new ArrayList<>();
+        List<Product> replacements = new ArrayList<>();
+        for (Product product : products) {
+            Product before = store.getProductById(product.getProductId());
+            if (before != null) {
+                replaced.add(new String[]{before.getProductName(), before.getCategory()});
+                replacements.add(product);
+            }
+        }
+        store.addProducts(products);
+        if (replacements.isEmpty()) {
+            index.addAll(products);
+            return;
+        }
+        int next = 0;
+        for (Product product : products) {
+            if (next < replacements.size() && replacements.get(next) == product) {
+                reindex(product, replaced.get(next)[0], replaced.get(next)[1]);
+                next++;
+            } else {
+                index.add(product.getProductId(), product.getProductName(), product.getCategory());
+            }
+        }
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        Product before = store.getProductById(product.getProductId());
+        if (before == null) {
+            store.updateProduct(product);
+            return;
+        }
+        String oldName = before.getProductName();
+        String oldCategory = before.getCategory();
+        store.updateProduct(product);
+        reindex(product, oldName, oldCategory);
+    }
+
+    private void reindex(Product product, String oldName, String oldCategory) {
+        if (!Objects.equals(oldName, product.getProductName()) || !Objects.equals(oldCategory, product.getCategory())) {
+            index.update(product.getProductId(), oldName, oldCategory, product.getProductName(), product.getCategory());
+        }
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        store.updateQuantityInStock(productId, quantityInStock);
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        return store.adjustQuantityInStock(productId, delta);
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        return store.computeQuantityInStock(productId, update);
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        Product before = store.getProductById(productId);
+        if (before == null) {
+            store.removeProduct(productId);
+            return;
+        }
+        String oldName = before.getProductName();
+        String oldCategory = before.getCategory();
+        store.removeProduct(productId);
+        index.remove(productId, oldName, oldCategory);
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        return store.getProductById(productId);
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return store.getAllProducts();
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        return store.getProductByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        return store.getProductsByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        return store.getProductsByCategory(category);
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return store.getCategories();
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        return store.getCategoryStats(category);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ProductCursor cursor() {
+        return store.cursor();
+    }
+}
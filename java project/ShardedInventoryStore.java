@@ -0,0 +1,582 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Inventory spread over several warehouses, one shard each. Every shard is a complete
+ * {@link InventoryStore} with its own stock levels and its own locks, so sales at different sites
+ * never meet on a lock. A product is stored only in the warehouses that stock it: its home
+ * warehouse, where it is added, and any warehouse stock has been transferred to since. Its stock
+ * through this store is the sum over those warehouses.
+ *
+ * Which warehouses hold a product is kept in a placement map, and every change to a product's
+ * stock or rows is made while its entry in the map is being computed, so changes to one product
+ * are serialised across warehouses while different products still change in parallel. Stock
+ * changes coming through the {@link InventoryStore} methods, such as those made by
+ * {@link Main#recordTransaction(Transaction)} and {@link Main#recordTransactions}, work on the
+ * total over all warehouses and return it. A product held in its home warehouse alone is changed
+ * there with no other shard read. Otherwise purchases go to the home warehouse, and sales are
+ * taken from the home warehouse first and then from the others, the best stocked first. Stock is
+ * moved between warehouses with {@link #transfer(int, String, String, int)}.
+ *
+ * Queries that need every shard (lookups by name or category, category totals) run on all shards
+ * in parallel on a fork-join pool. Products handed out are detached copies carrying the total
+ * stock. Listings walk the warehouses in order and each warehouse's products in insertion order.
+ */
+class ShardedInventoryStore implements InventoryStore {
+    private final List<String> warehouses;
+    private final InventoryStore[] shards;
+    private final ForkJoinPool pool;
+    // Where each product is stored. Changes to a product's rows in the shards are made while its
+    // entry is being computed, so they are serialised per product.
+    private final ConcurrentHashMap<Integer, Placement> placements = new ConcurrentHashMap<>();
+    // Rows outside the home warehouse, by category, so a category's product count is not
+    // inflated by products stocked in several warehouses
+    private final ConcurrentHashMap<String, Integer> extraRowsByCategory = new ConcurrentHashMap<>();
+
+    public ShardedInventoryStore(List<String> warehouses, Supplier<InventoryStore> newShard) {
+        this(warehouses, newShard, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param warehouses the warehouse names, one shard each, at most 64
+     * @param newShard   creates the store behind each shard
+     * @param pool       runs the queries that fan out over every shard
+     */
+    public ShardedInventoryStore(List<String> warehouses, Supplier<InventoryStore> newShard, ForkJoinPool pool) {
+        if (warehouses.isEmpty() || new HashSet<>(warehouses).size() != warehouses.size()) {
+            throw new IllegalArgumentException("Warehouse names must be distinct and there must be at least one: "
+                    + warehouses);
+        }
+        if (warehouses.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " warehouses are supported: "
+                    + warehouses.size());
+        }
+        this.warehouses = Collections.unmodifiableList(new ArrayList<>(warehouses));
+        this.shards = new InventoryStore[warehouses.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = newShard.get();
+        }
+        this.pool = pool;
+    }
+
+    public List<String> getWarehouses() {
+        return warehouses;
+    }
+
+    /**
+     * Returns the store behind one warehouse, for reading its stock. Changes should go through
+     * this store, which keeps track of where each product is stored.
+     */
+    public InventoryStore getShard(String warehouse) {
+        return shards[shardIndex(warehouse)];
+    }
+
+    /**
+     * The warehouse the product was added to, which stock changes are routed to, or null if the
+     * product is unknown.
+     */
+    public String getHomeWarehouse(int productId) {
+        Placement placement = placements.get(productId);
+        return placement != null ? warehouses.get(placement.home) : null;
+    }
+
+    /**
+     * Stores a product in the given warehouse, which becomes its home. As with
+     * {@link #addProduct(Product)}, a product already stored under the same id is replaced,
+     * along with its stock in every warehouse.
+     */
+    public void addProduct(String warehouse, Product product) {
+        add(shardIndex(warehouse), product);
+    }
+
+    /**
+     * Returns how much of the product each warehouse holds, in warehouse order, or null if the
+     * product is unknown.
+     */
+    public Map<String, Integer> getStockByWarehouse(int productId) {
+        Placement placement = placements.get(productId);
+        if (placement == null) {
+            return null;
+        }
+        Map<String, Integer> stock = new LinkedHashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            Product product = placement.stores(i) ? shards[i].getProductById(productId) : null;
+            stock.put(warehouses.get(i), product != null ? product.getQuantityInStock() : 0);
+        }
+        return stock;
+    }
+
+    /**
+     * Returns each warehouse's totals for a category, in warehouse order. A warehouse's product
+     * count is the number of the category's products it stores.
+     */
+    public Map<String, CategoryStats> getCategoryStatsByWarehouse(String category) {
+        List<CategoryStats> stats = fanOut(shard -> shard.getCategoryStats(category));
+        Map<String, CategoryStats> byWarehouse = new LinkedHashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            byWarehouse.put(warehouses.get(i), stats.get(i));
+        }
+        return byWarehouse;
+    }
+
+    /**
+     * Moves {@code quantity} units of a product from one warehouse to another, storing the
+     * product in the target warehouse if it was not yet. The total stock is the same before and
+     * after; a reader in between may see the units in neither warehouse.
+     *
+     * @throws IllegalArgumentException if a warehouse or the product is unknown, the quantity is
+     *                                  not positive, or the source holds fewer units than that
+     */
+    public void transfer(int productId, String fromWarehouse, String toWarehouse, int quantity) {
+        int from = shardIndex(fromWarehouse);
+        int to = shardIndex(toWarehouse);
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Transfer quantity must be positive: " + quantity);
+        }
+        Placement placement = placements.computeIfPresent(productId, (id, current) -> {
+            int held = current.stores(from) ? level(from, productId) : 0;
+            if (held < quantity) {
+                throw new IllegalArgumentException("Warehouse " + fromWarehouse + " holds only " + held
+                        + " units of product " + productId);
+            }
+            if (from == to) {
+                return current;
+            }
+            Placement updated = current;
+            if (!current.stores(to)) {
+                Product home = shards[current.home].getProductById(productId);
+                shards[to].addProduct(copy(home, 0));
+                countExtraRows(home.getCategory(), 1);
+                updated = current.with(to);
+            }
+            shards[from].adjustQuantityInStock(productId, -quantity);
+            shards[to].adjustQuantityInStock(productId, quantity);
+            return updated;
+        });
+        if (placement == null) {
+            throw new IllegalArgumentException("Unknown product id: " + productId);
+        }
+    }
+
+    /**
+     * Stores the product in its home warehouse only: the one it already had if the id is known,
+     * otherwise one picked by hashing the id.
+     */
+    @Override
+    public void addProduct(Product product) {
+        add(-1, product);
+    }
+
+    /**
+     * Adds the products to their home warehouses (see {@link #addProduct(Product)}), one batch
+     * per warehouse.
+     */
+    @Override
+    public void addProducts(Collection<Product> products) {
+        List<List<Product>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Product product : products) {
+            Placement placement = placements.compute(product.getProductId(), (id, current) -> {
+                int home = current != null ? current.home : hashHome(id);
+                if (current != null) {
+                    dropRowsOutside(id, current, home);
+                }
+                return new Placement(home, 1L << home);
+            });
+            byShard.get(placement.home).add(product);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!byShard.get(i).isEmpty()) {
+                shards[i].addProducts(byShard.get(i));
+            }
+        }
+    }
+
+    /**
+     * Updates the catalogue fields in every warehouse storing the product and sets the total
+     * stock to the product's, by changing the home warehouse's share. As on a single store, stock
+     * sold meanwhile is overwritten.
+     */
+    @Override
+    public void updateProduct(Product product) {
+        int productId = product.getProductId();
+        placements.computeIfPresent(productId, (id, placement) -> {
+            Product home = shards[placement.home].getProductById(productId);
+            String category = home != null ? home.getCategory() : null;
+            int elsewhere = 0;
+            int extraRows = 0;
+            for (int i = 0; i < shards.length; i++) {
+                if (i != placement.home && placement.stores(i)) {
+                    Product stored = shards[i].getProductById(productId);
+                    if (stored != null) {
+                        shards[i].updateProduct(copy(product, stored.getQuantityInStock()));
+                        elsewhere += stored.getQuantityInStock();
+                        extraRows++;
+                    }
+                }
+            }
+            shards[placement.home].updateProduct(copy(product, product.getQuantityInStock() - elsewhere));
+            if (extraRows > 0 && !Objects.equals(category, product.getCategory())) {
+                countExtraRows(category, -extraRows);
+                countExtraRows(product.getCategory(), extraRows);
+            }
+            return placement;
+        });
+    }
+
+    /**
+     * Sets the total stock, routing the difference as {@link #computeQuantityInStock} does.
+     */
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        placements.computeIfPresent(productId, (id, placement) -> {
+            computeTotal(id, placement, stock -> quantityInStock);
+            return placement;
+        });
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        return computeQuantityInStock(productId, stock -> stock + delta);
+    }
+
+    /**
+     * Applies {@code update} to the product's total stock over all warehouses and returns the new
+     * total. No other stock change through this store lands in between; see the class comment for
+     * which warehouses the difference goes to. A sale the warehouses cannot cover between them
+     * takes the home warehouse's stock below zero, as a single store's would go.
+     */
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        int[] total = new int[1];
+        Placement placement = placements.computeIfPresent(productId, (id, current) -> {
+            total[0] = computeTotal(id, current, update);
+            return current;
+        });
+        if (placement == null) {
+            throw new IllegalArgumentException("Unknown product id: " + productId);
+        }
+        return total[0];
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        placements.computeIfPresent(productId, (id, placement) -> {
+            dropRowsOutside(id, placement, -1);
+            return null;
+        });
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        Placement placement = placements.get(productId);
+        if (placement == null) {
+            return null;
+        }
+        Product product = shards[placement.home].getProductById(productId);
+        return product != null
+                ? copy(product, product.getQuantityInStock() + stockElsewhere(productId, placement))
+                : null;
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        List<Product> products = new ArrayList<>(size());
+        ProductCursor product = cursor();
+        while (product.next()) {
+            products.add(new Product(product.getProductId(), product.getProductName(), product.getQuantityInStock(),
+                    product.getPrice(), product.getCategory()));
+        }
+        return products;
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        List<Product> products = getProductsByName(productName);
+        return products.isEmpty() ? null : products.get(0);
+    }
+
+    /**
+     * Looks the name up in each warehouse in parallel.
+     */
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        return withTotalStock(fanOut(shard -> shard.getProductsByName(productName)));
+    }
+
+    /**
+     * Lists the category with each warehouse looked up in parallel.
+     */
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        return withTotalStock(fanOut(shard -> shard.getProductsByCategory(category)));
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        Set<String> categories = new HashSet<>();
+        for (Set<String> shardCategories : fanOut(InventoryStore::getCategories)) {
+            categories.addAll(shardCategories);
+        }
+        return categories;
+    }
+
+    /**
+     * Adds up the category's totals from every warehouse, looked up in parallel. A product stored
+     * in several warehouses is counted once.
+     */
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        int productCount = 0;
+        long units = 0;
+        double value = 0;
+        for (CategoryStats shardStats : fanOut(shard -> shard.getCategoryStats(category))) {
+            productCount += shardStats.getProductCount();
+            units += shardStats.getUnitsInStock();
+            value += shardStats.getStockValue();
+        }
+        Integer extraRows = category != null ? extraRowsByCategory.get(category) : null;
+        return new CategoryStats(category, productCount - (extraRows != null ? extraRows : 0), units, value);
+    }
+
+    @Override
+    public int size() {
+        return placements.size();
+    }
+
+    /**
+     * Walks each warehouse's products in turn, skipping those whose home is elsewhere, and looks
+     * up the stock of the rest in the other warehouses storing them.
+     */
+    @Override
+    public ProductCursor cursor() {
+        return new ProductCursor() {
+            private int shard = -1;
+            private ProductCursor rows;
+            private int quantityInStock;
+
+            @Override
+            public boolean next() {
+                while (true) {
+                    while (rows == null || !rows.next()) {
+                        if (++shard == shards.length) {
+                            rows = null;
+                            return false;
+                        }
+                        rows = shards[shard].cursor();
+                    }
+                    Placement placement = placements.get(rows.getProductId());
+                    if (placement != null && placement.home == shard) {
+                        quantityInStock = rows.getQuantityInStock() + stockElsewhere(rows.getProductId(), placement);
+                        return true;
+                    }
+                }
+            }
+
+            @Override
+            public int getProductId() {
+                return rows.getProductId();
+            }
+
+            @Override
+            public String getProductName() {
+                return rows.getProductName();
+            }
+
+            @Override
+            public int getQuantityInStock() {
+                return quantityInStock;
+            }
+
+            @Override
+            public double getPrice() {
+                return rows.getPrice();
+            }
+
+            @Override
+            public String getCategory() {
+                return rows.getCategory();
+            }
+        };
+    }
+
+    // Runs the query on every shard at once and returns the results in warehouse order.
+    private <T> List<T> fanOut(Function<InventoryStore, T> query) {
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards.length);
+        for (int i = 1; i < shards.length; i++) {
+            InventoryStore shard = shards[i];
+            tasks.add(pool.submit(() -> query.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        // The calling thread takes the first shard itself rather than wait idle.
+        results.add(query.apply(shards[0]));
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    // Stores the product in the given shard, or in its current or hashed home for -1, and drops
+    // whatever was stored under its id before.
+    private void add(int shard, Product product) {
+        placements.compute(product.getProductId(), (id, current) -> {
+            int home = shard >= 0 ? shard : current != null ? current.home : hashHome(id);
+            if (current != null) {
+                dropRowsOutside(id, current, home);
+            }
+            shards[home].addProduct(product);
+            return new Placement(home, 1L << home);
+        });
+    }
+
+    // Removes the product's rows from every shard it is stored in except keep (-1 for none).
+    // Called while the product's placement is being computed.
+    private void dropRowsOutside(int productId, Placement placement, int keep) {
+        Product home = shards[placement.home].getProductById(productId);
+        for (int i = 0; i < shards.length; i++) {
+            if (i != keep && placement.stores(i)) {
+                shards[i].removeProduct(productId);
+                if (i != placement.home && home != null) {
+                    countExtraRows(home.getCategory(), -1);
+                }
+            }
+        }
+    }
+
+    private void countExtraRows(String category, int rows) {
+        if (category != null) {
+            extraRowsByCategory.merge(category, rows, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    // Applies update to the total stock and spreads the difference over the warehouses. Called
+    // while the product's placement is being computed.
+    private int computeTotal(int productId, Placement placement, IntUnaryOperator update) {
+        InventoryStore home = shards[placement.home];
+        if (placement.shards == 1L << placement.home) {
+            return home.computeQuantityInStock(productId, update);
+        }
+        int[] stock = new int[shards.length];
+        int total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (placement.stores(i)) {
+                stock[i] = level(i, productId);
+                total += stock[i];
+            }
+        }
+        int updated = update.applyAsInt(total);
+        if (updated >= total) {
+            home.adjustQuantityInStock(productId, updated - total);
+            return updated;
+        }
+        long needed = (long) total - updated;
+        for (int source = placement.home; source >= 0 && needed > 0; source = bestStocked(placement, stock)) {
+            int taken = (int) Math.min(needed, Math.max(stock[source], 0));
+            if (taken > 0) {
+                shards[source].adjustQuantityInStock(productId, -taken);
+                needed -= taken;
+            }
+            stock[source] = 0;
+        }
+        if (needed > 0) {
+            home.adjustQuantityInStock(productId, (int) -needed);
+        }
+        return updated;
+    }
+
+    // The warehouse other than the home one with the most stock left, or -1 if none has any.
+    private static int bestStocked(Placement placement, int[] stock) {
+        int best = -1;
+        for (int i = 0; i < stock.length; i++) {
+            if (i != placement.home && stock[i] > 0 && (best < 0 || stock[i] > stock[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int level(int shard, int productId) {
+        Product product = shards[shard].getProductById(productId);
+        return product != null ? product.getQuantityInStock() : 0;
+    }
+
+    private int hashHome(int productId) {
+        int hash = productId * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    private int shardIndex(String warehouse) {
+        int index = warehouses.indexOf(warehouse);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown warehouse: " + warehouse);
+        }
+        return index;
+    }
+
+    private int stockElsewhere(int productId, Placement placement) {
+        int stock = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (i != placement.home && placement.stores(i)) {
+                Product product = shards[i].getProductById(productId);
+                stock += product != null ? product.getQuantityInStock() : 0;
+            }
+        }
+        return stock;
+    }
+
+    // Merges the rows found in several warehouses into one product each, in the order first seen,
+    // with the total stock.
+    private List<Product> withTotalStock(List<List<Product>> perShard) {
+        Map<Integer, Product> products = new LinkedHashMap<>();
+        for (List<Product> rows : perShard) {
+            for (Product row : rows) {
+                Product total = products.get(row.getProductId());
+                if (total == null) {
+                    products.put(row.getProductId(), copy(row, row.getQuantityInStock()));
+                } else {
+                    total.setQuantityInStock(total.getQuantityInStock() + row.getQuantityInStock());
+                }
+            }
+        }
+        return new ArrayList<>(products.values());
+    }
+
+    private static Product copy(Product product, int quantityInStock) {
+        return new Product(product.getProductId(), product.getProductName(), quantityInStock, product.getPrice(),
+                product.getCategory());
+    }
+
+    // The home shard and the set of shards storing a product, one bit per shard.
+    private static final class Placement {
+        final int home;
+        final long shards;
+
+        Placement(int home, long shards) {
+            this.home = home;
+            this.shards = shards;
+        }
+
+        boolean stores(int shard) {
+            return (shards & 1L << shard) != 0;
+        }
+
+        Placement with(int shard) {
+            return new Placement(home, shards | 1L << shard);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reorder thresholds, checked each time a product's stock changes. A product's own threshold
+ * wins over its category's. When stock falls to or below the threshold an {@link Alert} of type
+ * {@link AlertType#LOW_STOCK} is raised, and when it climbs back above it one of type
+ * {@link AlertType#RESTOCKED}; levels that stay on one side raise nothing.
+ *
+ * Checking is a map lookup or two on the thread that changed the stock. Alerts are handed to
+ * listeners on a separate dispatcher thread through a bounded queue; if listeners fall so far
+ * behind that the queue fills, further alerts are dropped and counted rather than blocking the
+ * sale that caused them.
+ */
+class StockAlerts {
+    private static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    enum AlertType {
+        LOW_STOCK, RESTOCKED
+    }
+
+    interface Listener {
+        void onAlert(Alert alert);
+    }
+
+    private final InventoryStore store;
+    private final Map<Integer, Integer> productThresholds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> categoryThresholds = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Alert> queue;
+    private final LongAdder dropped = new LongAdder();
+    // Started when the first threshold is set, so stores that never use alerts cost no thread.
+    private Thread dispatcher;
+
+    /**
+     * @param store where the dispatcher looks up the products alerts are about
+     */
+    public StockAlerts(InventoryStore store) {
+        this(store, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public StockAlerts(InventoryStore store, int queueCapacity) {
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public void setProductThreshold(int productId, int threshold) {
+        startDispatcher();
+        productThresholds.put(productId, threshold);
+    }
+
+    public void clearProductThreshold(int productId) {
+        productThresholds.remove(productId);
+    }
+
+    public void setCategoryThreshold(String category, int threshold) {
+        startDispatcher();
+        categoryThresholds.put(category, threshold);
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatchLoop, "stock-alert-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    public void clearCategoryThreshold(String category) {
+        categoryThresholds.remove(category);
+    }
+
+    /**
+     * Registers a listener. Listeners are called one at a time on the dispatcher thread.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns how many alerts were dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Checks a stock change against the product's threshold and queues an alert if it crossed it.
+     * {@code category} is only consulted when the product has no threshold of its own.
+     */
+    void stockChanged(int productId, String category, int previous, int current) {
+        Integer threshold = productThresholds.get(productId);
+        if (threshold == null && category != null && !categoryThresholds.isEmpty()) {
+            threshold = categoryThresholds.get(category);
+        }
+        if (threshold == null) {
+            return;
+        }
+        AlertType type;
+        if (previous > threshold && current <= threshold) {
+            type = AlertType.LOW_STOCK;
+        } else if (previous <= threshold && current > threshold) {
+            type = AlertType.RESTOCKED;
+        } else {
+            return;
+        }
+        if (!queue.offer(new Alert(type, productId, current, threshold))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Whether any threshold is set, so callers can skip the work of reporting changes otherwise.
+     */
+    boolean hasThresholds() {
+        return !productThresholds.isEmpty() || !categoryThresholds.isEmpty();
+    }
+
+    /**
+     * Whether category thresholds are set, in which case {@link #stockChanged} needs the category.
+     */
+    boolean hasCategoryThresholds() {
+        return !categoryThresholds.isEmpty();
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            Alert alert;
+            try {
+                alert = queue.take();
+            } catch (InterruptedException e) {
+                // The dispatcher is a daemon and runs for the life of the program.
+                continue;
+            }
+            // Looked up here rather than on the sale path.
+            alert.product = store.getProductById(alert.productId);
+            for (Listener listener : listeners) {
+                try {
+                    listener.onAlert(alert);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in stock alert listener: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    static class Alert {
+        private final AlertType type;
+        private final int productId;
+        private final int quantityInStock;
+        private final int threshold;
+        private Product product;
+
+        private Alert(AlertType type, int productId, int quantityInStock, int threshold) {
+            this.type = type;
+            this.productId = productId;
+            this.quantityInStock = quantityInStock;
+            this.threshold = threshold;
+        }
+
+        public AlertType getType() {
+            return type;
+        }
+
+        public int getProductId() {
+            return productId;
+        }
+
+        /**
+         * Returns the product as it was when the alert was dispatched, or null if it has since been
+         * removed.
+         */
+        public Product getProduct() {
+            return product;
+        }
+
+        /**
+         * Returns the stock level the change left the product at.
+         */
+        public int getQuantityInStock() {
+            return quantityInStock;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+
+        @Override
+        public String toString() {
+            String name = product != null ? product.getProductName() : "product " + productId;
+            return (type == AlertType.LOW_STOCK ? "Low stock: " : "Restocked: ") + name + " has "
+                    + quantityInStock + " in stock (reorder threshold " + threshold + ")";
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of transactions applied to stock in one pass. Entries are checked in order and
+ * rejected for unknown products, non-positive quantities, missing dates or types, and sales that
+ * would take a product's stock below zero (or purchases that would take it past
+ * {@link Integer#MAX_VALUE}) given the entries accepted before them. Each product's stock is
+ * adjusted once by its net change, instead of once per transaction, and only the entries that
+ * were applied are handed to the log and journal.
+ *
+ * The stock checks for a product and its adjustment happen together under the product's stock
+ * lock (see {@link InventoryStore#computeQuantityInStock}), so sales recorded by other threads
+ * meanwhile are accounted for and cannot push stock negative behind the batch's back.
+ */
+class TransactionBatch {
+    private final List<Transaction> transactions;
+    // Why each entry was rejected, by position in the batch, or null once it is accepted
+    private final String[] problems;
+    // Positions of the entries for each product, in batch order
+    private final Map<Integer, List<Integer>> byProduct;
+    // Net stock change applied so far per product, for rolling back
+    private final Map<Integer, Integer> applied = new LinkedHashMap<>();
+    private final List<Transaction> accepted = new ArrayList<>();
+    private final TransactionBatchReport report = new TransactionBatchReport();
+
+    private TransactionBatch(List<Transaction> transactions, String[] problems,
+                             Map<Integer, List<Integer>> byProduct) {
+        this.transactions = transactions;
+        this.problems = problems;
+        this.byProduct = byProduct;
+    }
+
+    /**
+     * Checks each entry on its own and groups the valid ones by product. Stock is checked when
+     * the batch is applied.
+     */
+    public static TransactionBatch validate(Iterable<Transaction> batch) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (Transaction transaction : batch) {
+            transactions.add(transaction);
+        }
+        String[] problems = new String[transactions.size()];
+        Map<Integer, List<Integer>> byProduct = new LinkedHashMap<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            problems[i] = check(transaction);
+            if (problems[i] == null) {
+                byProduct.computeIfAbsent(transaction.getProduct().getProductId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+        return new TransactionBatch(transactions, problems, byProduct);
+    }
+
+    private static String check(Transaction transaction) {
+        if (transaction == null) {
+            return "null transaction";
+        }
+        if (transaction.getProduct() == null) {
+            return "no product";
+        }
+        if (transaction.getQuantity() <= 0) {
+            return "quantity must be positive but was " + transaction.getQuantity();
+        }
+        if (transaction.getDate() == null) {
+            return "no date";
+        }
+        if (transaction.getType() == null) {
+            return "no transaction type";
+        }
+        return null;
+    }
+
+    /**
+     * The entries applied to stock, in batch order. Empty until {@link #applyTo} has run.
+     */
+    public List<Transaction> getAccepted() {
+        return accepted;
+    }
+
+    public TransactionBatchReport getReport() {
+        return report;
+    }
+
+    /**
+     * Checks each product's entries against its stock and applies their net change, product by
+     * product. If applying fails part way, the products already changed are rolled back and the
+     * exception is rethrown.
+     */
+    public void applyTo(InventoryStore store) {
+        try {
+            for (Map.Entry<Integer, List<Integer>> entries : byProduct.entrySet()) {
+                apply(store, entries.getKey(), entries.getValue());
+            }
+        } catch (RuntimeException e) {
+            rollBack(store);
+            throw e;
+        }
+        for (int i = 0; i < transactions.size(); i++) {
+            if (problems[i] == null) {
+                accepted.add(transactions.get(i));
+                report.accept();
+            } else {
+                report.reject(transactions.get(i), problems[i]);
+            }
+        }
+    }
+
+    private void apply(InventoryStore store, int productId, List<Integer> entries) {
+        int[] net = new int[1];
+        boolean[] ran = new boolean[1];
+        try {
+            store.computeQuantityInStock(productId, stock -> {
+                ran[0] = true;
+                long level = stock;
+                for (int i : entries) {
+                    Transaction transaction = transactions.get(i);
+                    long updated = transaction.getType() == TransactionType.SALE
+                            ? level - transaction.getQuantity()
+                            : level + transaction.getQuantity();
+                    if (updated < 0) {
+                        problems[i] = "only " + level + " in stock";
+                    } else if (updated > Integer.MAX_VALUE) {
+                        problems[i] = "stock would exceed " + Integer.MAX_VALUE;
+                    } else {
+                        problems[i] = null;
+                        level = updated;
+                    }
+                }
+                net[0] = (int) (level - stock);
+                return (int) level;
+            });
+        } catch (IllegalArgumentException e) {
+            if (ran[0]) {
+                throw e;
+            }
+            for (int i : entries) {
+                problems[i] = "unknown product " + productId;
+            }
+        } finally {
+            if (ran[0]) {
+                applied.put(productId, net[0]);
+            }
+        }
+    }
+
+    /**
+     * Takes back the stock changes made by {@link #applyTo}, e.g. when the batch could not be
+     * journaled afterwards.
+     */
+    public void rollBack(InventoryStore store) {
+        for (Map.Entry<Integer, Integer> change : applied.entrySet()) {
+            try {
+                store.adjustQuantityInStock(change.getKey(), -change.getValue());
+            } catch (IllegalArgumentException e) {
+                // Removed since; there is no stock left to correct.
+            }
+        }
+        applied.clear();
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of recording a batch of transactions: how many were recorded and which were rejected.
+ * Only the first {@value #MAX_RECORDED_REJECTIONS} rejections are kept verbatim so a bad batch
+ * cannot flood memory; {@link #getRejectedCount()} still counts all of them.
+ */
+class TransactionBatchReport {
+    private static final int MAX_RECORDED_REJECTIONS = 100;
+
+    private long recorded;
+    private long rejectedCount;
+    private final List<String> rejections = new ArrayList<>();
+
+    void accept() {
+        recorded++;
+    }
+
+    void reject(Transaction transaction, String reason) {
+        rejectedCount++;
+        if (rejections.size() < MAX_RECORDED_REJECTIONS) {
+            rejections.add(transaction == null
+                    ? "null transaction"
+                    : "transaction " + transaction.getTransactionId() + ": " + reason);
+        }
+    }
+
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public List<String> getRejections() {
+        return new ArrayList<>(rejections);
+    }
+
+    public boolean hasRejections() {
+        return rejectedCount > 0;
+    }
+}
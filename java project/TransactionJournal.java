@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, write-ahead journal of recorded transactions.
+ *
+ * The journal carries a generation number. A checkpoint saves an inventory snapshot stamped with
+ * the current generation and then {@link #rotate() rotates} the journal, emptying it under the next
+ * generation. On startup, a journal whose generation the loaded snapshot already covers is
+ * discarded instead of replayed, so a crash between saving the snapshot and rotating never applies
+ * a transaction twice.
+ *
+ * Appends only copy the record into an in-memory batch. A background flusher writes whatever
+ * has accumulated and fsyncs it in one go (group commit), so many threads waiting on
+ * {@link #awaitDurable(long)} share a single fsync. Each record is fixed width and carries a
+ * CRC32, so a record torn by a crash is detected when the journal is opened, which replays the
+ * intact prefix and cuts the file back to it.
+ *
+ * <pre>
+ * header  magic, version, generation (16 bytes)
+ * record  transaction id, product id, quantity, epoch day (ints), type (byte),
+ *         unit price in cents (long), CRC32 (int)
+ * </pre>
+ *
+ * Version 1 journals had no price in their records. One is still replayed, and then rewritten
+ * as version 2 with {@link #UNKNOWN_PRICE} in place of the missing prices.
+ */
+class TransactionJournal {
+    private static final int MAGIC = 0x54584A4C; // "TXJL"
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_PRICES = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 29;
+    private static final int RECORD_SIZE_WITHOUT_PRICES = 21;
+    private static final int READ_BATCH_RECORDS = 4096;
+
+    /**
+     * Handed to {@link RecordHandler} as the price of a record journaled before records carried
+     * one; the transaction should be priced as the product is now.
+     */
+    static final long UNKNOWN_PRICE = Long.MIN_VALUE;
+
+    interface RecordHandler {
+        void onRecord(int transactionId, int productId, int quantity, LocalDate date, TransactionType type,
+                      long unitPriceCents);
+    }
+
+    private final FileChannel channel;
+    private final Thread flusher;
+    private long generation;
+
+    // Guarded by this. Appenders fill pending; the flusher swaps it with flushing and writes that.
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+    private long appendedSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    private final CRC32 crc = new CRC32();
+
+    private TransactionJournal(FileChannel channel, long generation) {
+        this.channel = channel;
+        this.generation = generation;
+        this.flusher = new Thread(this::flushLoop, "transaction-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens (creating if needed) the journal at {@code path} and returns it ready for appending.
+     * If its generation is newer than {@code coveredGeneration} (the generation stamped on the
+     * snapshot the inventory was loaded from, or -1 if there is none), every intact record is handed
+     * to {@code handler} in the order it was written and any torn tail is cut off. Otherwise the
+     * snapshot already contains the records, and the journal is rotated past it without replaying.
+     */
+    public static TransactionJournal open(Path path, long coveredGeneration, RecordHandler handler)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long generation;
+            if (channel.size() < HEADER_SIZE) {
+                generation = coveredGeneration + 1;
+                writeHeader(channel, generation);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                header.flip();
+                int magic = header.getInt();
+                int version = header.getInt();
+                if (magic != MAGIC || (version != VERSION && version != VERSION_WITHOUT_PRICES)) {
+                    throw new IOException("Not a transaction journal: " + path);
+                }
+                generation = header.getLong();
+                if (generation <= coveredGeneration) {
+                    generation = coveredGeneration + 1;
+                    writeHeader(channel, generation);
+                } else if (version == VERSION_WITHOUT_PRICES) {
+                    channel = upgrade(path, channel, generation, handler);
+                } else {
+                    long validEnd = replay(channel, RECORD_SIZE, handler);
+                    if (validEnd < channel.size()) {
+                        channel.truncate(validEnd);
+                        channel.force(true);
+                    }
+                }
+            }
+            channel.position(channel.size());
+            return new TransactionJournal(channel, generation);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Returns the offset just past the last intact record.
+    private static long replay(FileChannel channel, int recordSize, RecordHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize * READ_BATCH_RECORDS);
+        CRC32 crc = new CRC32();
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        while (position + recordSize <= size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (size - position) / recordSize * recordSize));
+            readFully(channel, buffer, position);
+            buffer.flip();
+            while (buffer.remaining() >= recordSize) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), start, recordSize - Integer.BYTES);
+                int transactionId = buffer.getInt();
+                int productId = buffer.getInt();
+                int quantity = buffer.getInt();
+                int epochDay = buffer.getInt();
+                byte type = buffer.get();
+                long unitPriceCents = recordSize == RECORD_SIZE ? buffer.getLong() : UNKNOWN_PRICE;
+                int checksum = buffer.getInt();
+                if (checksum != (int) crc.getValue() || type < 0 || type >= TransactionType.values().length) {
+                    return position;
+                }
+                handler.onRecord(transactionId, productId, quantity, LocalDate.ofEpochDay(epochDay),
+                        TransactionType.values()[type], unitPriceCents);
+                position += recordSize;
+            }
+        }
+        return position;
+    }
+
+    // Replays a version 1 journal and replaces it, through a temporary file renamed into place,
+    // with a version 2 journal of the same records. Returns a channel on the new file.
+    private static FileChannel upgrade(Path path, FileChannel channel, long generation, RecordHandler handler)
+            throws IOException {
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE_WITHOUT_PRICES;
+        ByteBuffer upgraded = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + records * RECORD_SIZE));
+        upgraded.putInt(MAGIC).putInt(VERSION).putLong(generation);
+        CRC32 crc = new CRC32();
+        replay(channel, RECORD_SIZE_WITHOUT_PRICES, (transactionId, productId, quantity, date, type, unitPriceCents) -> {
+            handler.onRecord(transactionId, productId, quantity, date, type, unitPriceCents);
+            encode(upgraded, crc, transactionId, productId, quantity, date, type, unitPriceCents);
+        });
+        upgraded.flip();
+        Path temporary = AtomicFiles.createTempFileFor(path);
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (upgraded.hasRemaining()) {
+                    out.write(upgraded);
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Queues a transaction for the next group commit and returns its sequence number. The
+     * record is not durable until {@link #awaitDurable(long)} returns for that number.
+     */
+    public synchronized long append(Transaction transaction) {
+        if (closed) {
+            throw new IllegalStateException("Transaction journal is closed");
+        }
+        ensureCapacity(RECORD_SIZE);
+        put(transaction);
+        appendedSequence++;
+        notifyAll();
+        return appendedSequence;
+    }
+
+    /**
+     * Queues every transaction for the same group commit and returns the sequence number of the
+     * last one, which covers them all in {@link #awaitDurable(long)}.
+     */
+    public synchronized long appendAll(Collection<Transaction> batch) {
+        if (closed) {
+            throw new IllegalStateException("Transaction journal is closed");
+        }
+        ensureCapacity((long) RECORD_SIZE * batch.size());
+        for (Transaction transaction : batch) {
+            put(transaction);
+        }
+        appendedSequence += batch.size();
+        notifyAll();
+        return appendedSequence;
+    }
+
+    private void ensureCapacity(long bytes) {
+        if (pending.remaining() < bytes) {
+            long capacity = pending.capacity();
+            while (capacity - pending.position() < bytes) {
+                capacity *= 2;
+            }
+            ByteBuffer larger = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, capacity));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void put(Transaction transaction) {
+        encode(pending, crc, transaction.getTransactionId(), transaction.getProduct().getProductId(),
+                transaction.getQuantity(), transaction.getDate(), transaction.getType(),
+                transaction.getUnitPriceCents());
+    }
+
+    private static void encode(ByteBuffer buffer, CRC32 crc, int transactionId, int productId, int quantity,
+                               LocalDate date, TransactionType type, long unitPriceCents) {
+        int start = buffer.position();
+        buffer.putInt(transactionId);
+        buffer.putInt(productId);
+        buffer.putInt(quantity);
+        buffer.putInt((int) date.toEpochDay());
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(unitPriceCents);
+        crc.reset();
+        crc.update(buffer.array(), start, RECORD_SIZE - Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Blocks until the record with the given sequence number has been written and fsynced.
+     *
+     * @throws UncheckedIOException if the journal could not be written
+     */
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableSequence < sequence) {
+            throw new UncheckedIOException("Transaction journal write failed", failure);
+        }
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Empties the journal and moves it to the next generation. Call this once a snapshot stamped
+     * with {@link #getGeneration()} has been saved. The caller must make sure no appends are in
+     * progress.
+     */
+    public synchronized void rotate() throws IOException {
+        awaitDurable(appendedSequence);
+        generation++;
+        writeHeader(channel, generation);
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Flushes outstanding records and closes the file.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long batchEnd;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // The flusher only stops through close().
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchEnd = appendedSequence;
+            }
+
+            // Written outside the lock so appenders keep filling the other buffer meanwhile.
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing);
+                }
+                channel.force(false);
+                flushing.clear();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    closed = true;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                durableSequence = batchEnd;
+                notifyAll();
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(generation);
+        header.flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of transaction journal");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,1100 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Log of recorded transactions, partitioned by the month of each transaction's date, that several
+ * threads can write to at once. Date-range and per-product queries only visit the months they
+ * cover, and iteration never throws ConcurrentModificationException: an iterator sees the
+ * transactions appended before it was created and possibly some later ones. Appends take no
+ * lock, so one still writing its record on another thread can hold back the records appended
+ * after it in the same month for that long.
+ *
+ * Transactions are not kept as objects. Each is packed into a 25-byte record as it is appended
+ * (product code, epoch day, quantity, type and unit price in cents; see {@link Records}), and
+ * Transaction objects are only created again for queries that ask for them. Revenue totals are
+ * added up straight from the records. New records go to their month's buffer of recent appends.
+ * Once a month is more than {@code hotMonths} behind the newest month seen, it goes cold: its
+ * records are compacted into one run sorted by date on a background thread, so the append that
+ * reaches a new month does not wait for it, and they can be moved out of the heap
+ * altogether into memory-mapped files with {@link #offloadBefore(YearMonth, Path)}.
+ * Offloaded files only hold a running log's history; they are not read back on restart.
+ *
+ * Iteration visits months in order and, within a month, the compacted transactions in date order
+ * followed by ones appended since the month was last compacted. Reports that must not see
+ * transactions appended while they run read a {@link #snapshot()} instead.
+ */
+class TransactionLog implements Iterable<Transaction> {
+    interface Listener {
+        void onAppend(Transaction transaction);
+    }
+
+    private static final int DEFAULT_HOT_MONTHS = 2;
+    // Compacts the months logs have moved past, off the appending threads. A daemon, so it never
+    // keeps the JVM alive; a month left uncompacted at exit only cost memory.
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "transaction-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NavigableMap<YearMonth, Partition> partitions;
+    private final AtomicInteger size;
+    private final List<Listener> listeners;
+    private final int hotMonths;
+    // Newest month appended to so far; reaching a newer one compacts the months left behind.
+    private volatile YearMonth newestMonth;
+
+    public TransactionLog() {
+        this(DEFAULT_HOT_MONTHS);
+    }
+
+    /**
+     * @param hotMonths how many of the newest months keep their transactions as objects
+     */
+    public TransactionLog(int hotMonths) {
+        this.partitions = new ConcurrentSkipListMap<>();
+        this.size = new AtomicInteger();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.hotMonths = hotMonths;
+    }
+
+    public void append(Transaction transaction) {
+        YearMonth month = YearMonth.from(transaction.getDate());
+        partition(month).add(transaction);
+        size.incrementAndGet();
+        for (Listener listener : listeners) {
+            listener.onAppend(transaction);
+        }
+        rollOver(month);
+    }
+
+    /**
+     * Appends every transaction in one go. Listeners are still called once per transaction.
+     */
+    public void appendAll(Collection<Transaction> batch) {
+        YearMonth newest = null;
+        YearMonth month = null;
+        Partition partition = null;
+        for (Transaction transaction : batch) {
+            YearMonth transactionMonth = YearMonth.from(transaction.getDate());
+            if (!transactionMonth.equals(month)) {
+                month = transactionMonth;
+                partition = partition(month);
+                newest = newest == null || month.isAfter(newest) ? month : newest;
+            }
+            partition.add(transaction);
+        }
+        size.addAndGet(batch.size());
+        for (Listener listener : listeners) {
+            for (Transaction transaction : batch) {
+                listener.onAppend(transaction);
+            }
+        }
+        if (newest != null) {
+            rollOver(newest);
+        }
+    }
+
+    private Partition partition(YearMonth month) {
+        Partition partition = partitions.get(month);
+        return partition != null ? partition : partitions.computeIfAbsent(month, key -> new Partition(key));
+    }
+
+    private void rollOver(YearMonth month) {
+        YearMonth newest = newestMonth;
+        if (newest != null && !month.isAfter(newest)) {
+            return;
+        }
+        synchronized (this) {
+            if (newestMonth != null && !month.isAfter(newestMonth)) {
+                return;
+            }
+            newestMonth = month;
+        }
+        YearMonth cold = month.minusMonths(hotMonths - 1);
+        COMPACTOR.execute(() -> compactBefore(cold));
+    }
+
+    /**
+     * Registers a listener that is called on the appending thread after every append. Listeners
+     * must be cheap and thread-safe, since they run on the recording path.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return query(partitions, Filter.ALL);
+    }
+
+    /**
+     * Returns the transactions dated from {@code from} to {@code to}, both inclusive (null for no
+     * bound), visiting only the months in that range.
+     */
+    public Iterable<Transaction> between(LocalDate from, LocalDate to) {
+        return () -> query(months(from, to), new Filter(from, to, 0, false));
+    }
+
+    /**
+     * Returns the transactions of one product dated from {@code from} to {@code to}, both
+     * inclusive (null for no bound). Compacted months the product does not appear in are skipped
+     * without reading them.
+     */
+    public Iterable<Transaction> forProduct(int productId, LocalDate from, LocalDate to) {
+        return () -> query(months(from, to), new Filter(from, to, productId, true));
+    }
+
+    /**
+     * Returns how many transactions fall in the months from {@code from} to {@code to} (null for
+     * no bound). This counts whole months, so it is an upper bound for the dates themselves.
+     */
+    public long countBetween(LocalDate from, LocalDate to) {
+        long count = 0;
+        for (Partition partition : months(from, to).values()) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    /**
+     * Adds up the count, units and value of the transactions dated from {@code from} to
+     * {@code to}, both inclusive (null for no bound), by type. This reads the packed records
+     * directly and creates no Transaction objects, so it is far cheaper than iterating
+     * {@link #between(LocalDate, LocalDate)}.
+     */
+    public SalesAggregates.Totals totalsBetween(LocalDate from, LocalDate to) {
+        return totals(months(from, to), new Filter(from, to, 0, false));
+    }
+
+    /**
+     * Same as {@link #totalsBetween(LocalDate, LocalDate)} for the transactions of one product.
+     */
+    public SalesAggregates.Totals totalsForProduct(int productId, LocalDate from, LocalDate to) {
+        return totals(months(from, to), new Filter(from, to, productId, true));
+    }
+
+    private static SalesAggregates.Totals totals(NavigableMap<YearMonth, ? extends Month> months, Filter filter) {
+        long[] sums = new long[TransactionType.values().length * 3];
+        for (Month month : months.values()) {
+            month.addTotals(filter, sums);
+        }
+        SalesAggregates.Totals totals = new SalesAggregates.Totals();
+        for (TransactionType type : TransactionType.values()) {
+            int index = type.ordinal() * 3;
+            totals.add(type, sums[index], sums[index + 1], sums[index + 2]);
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the log as it is now. The snapshot copies no transactions, only where each month
+     * ends, so it is cheap to take, and appends do not wait for it; it only waits for appends
+     * already under way to finish writing. It holds on to the compacted runs it was taken over,
+     * which are freed once it is no longer referenced.
+     */
+    public Snapshot snapshot() {
+        NavigableMap<YearMonth, Version> versions = new TreeMap<>();
+        int total = 0;
+        for (Map.Entry<YearMonth, Partition> entry : partitions.entrySet()) {
+            Version version = entry.getValue().settledVersion();
+            versions.put(entry.getKey(), version);
+            total += version.size();
+        }
+        return new Snapshot(versions, total);
+    }
+
+    /**
+     * Compacts every month before {@code month} that has transactions appended since it was last
+     * compacted. This happens on its own, in the background, as the log moves into new months;
+     * calling it directly compacts on the calling thread.
+     */
+    public void compactBefore(YearMonth month) {
+        for (Partition partition : partitions.headMap(month, false).values()) {
+            partition.compact();
+        }
+    }
+
+    /**
+     * Compacts every month before {@code month} and moves it into a memory-mapped file in
+     * {@code directory}, so it no longer takes heap. Transactions that arrive later for an
+     * offloaded month are folded into its file the next time it is compacted.
+     */
+    public void offloadBefore(YearMonth month, Path directory) throws IOException {
+        for (Partition partition : partitions.headMap(month, false).values()) {
+            partition.offload(directory);
+        }
+    }
+
+    private NavigableMap<YearMonth, Partition> months(LocalDate from, LocalDate to) {
+        return months(partitions, from, to);
+    }
+
+    private static <T> NavigableMap<YearMonth, T> months(NavigableMap<YearMonth, T> all, LocalDate from, LocalDate to) {
+        if (from != null && to != null) {
+            return all.subMap(YearMonth.from(from), true, YearMonth.from(to), true);
+        } else if (from != null) {
+            return all.tailMap(YearMonth.from(from), true);
+        } else if (to != null) {
+            return all.headMap(YearMonth.from(to), true);
+        }
+        return all;
+    }
+
+    private static Iterator<Transaction> query(NavigableMap<YearMonth, ? extends Month> months, Filter filter) {
+        Iterator<? extends Month> remaining = months.values().iterator();
+        return new Iterator<Transaction>() {
+            private Iterator<Transaction> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && remaining.hasNext()) {
+                    current = remaining.next().iterator(filter);
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * The log as it was when {@link TransactionLog#snapshot()} returned: queries on it see exactly
+     * the transactions appended before then, however many are appended while they run.
+     */
+    static final class Snapshot implements Iterable<Transaction> {
+        private final NavigableMap<YearMonth, Version> versions;
+        private final int size;
+
+        private Snapshot(NavigableMap<YearMonth, Version> versions, int size) {
+            this.versions = versions;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public Iterator<Transaction> iterator() {
+            return query(versions, Filter.ALL);
+        }
+
+        /**
+         * Same as {@link TransactionLog#between(LocalDate, LocalDate)}, over the snapshot.
+         */
+        public Iterable<Transaction> between(LocalDate from, LocalDate to) {
+            return () -> query(months(versions, from, to), new Filter(from, to, 0, false));
+        }
+
+        /**
+         * Same as {@link TransactionLog#forProduct(int, LocalDate, LocalDate)}, over the snapshot.
+         */
+        public Iterable<Transaction> forProduct(int productId, LocalDate from, LocalDate to) {
+            return () -> query(months(versions, from, to), new Filter(from, to, productId, true));
+        }
+
+        /**
+         * Same as {@link TransactionLog#countBetween(LocalDate, LocalDate)}, over the snapshot.
+         */
+        public long countBetween(LocalDate from, LocalDate to) {
+            long count = 0;
+            for (Version version : months(versions, from, to).values()) {
+                count += version.size();
+            }
+            return count;
+        }
+
+        /**
+         * Same as {@link TransactionLog#totalsBetween(LocalDate, LocalDate)}, over the snapshot.
+         */
+        public SalesAggregates.Totals totalsBetween(LocalDate from, LocalDate to) {
+            return totals(months(versions, from, to), new Filter(from, to, 0, false));
+        }
+
+        /**
+         * Same as {@link TransactionLog#totalsForProduct(int, LocalDate, LocalDate)}, over the snapshot.
+         */
+        public SalesAggregates.Totals totalsForProduct(int productId, LocalDate from, LocalDate to) {
+            return totals(months(versions, from, to), new Filter(from, to, productId, true));
+        }
+    }
+
+    /**
+     * A month of transactions that queries can walk.
+     */
+    private interface Month {
+        Iterator<Transaction> iterator(Filter filter);
+
+        /**
+         * Adds the count, units and value in cents of the matching transactions of each type to
+         * {@code sums}, at {@code type.ordinal() * 3} and the two places after it.
+         */
+        void addTotals(Filter filter, long[] sums);
+
+        int size();
+    }
+
+    /**
+     * Which transactions a query wants, as epoch days and an optional product id.
+     */
+    private static final class Filter {
+        static final Filter ALL = new Filter(null, null, 0, false);
+
+        final long fromDay;
+        final long toDay;
+        final int productId;
+        final boolean singleProduct;
+
+        Filter(LocalDate from, LocalDate to, int productId, boolean singleProduct) {
+            this.fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+            this.toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+            this.productId = productId;
+            this.singleProduct = singleProduct;
+        }
+    }
+
+    /**
+     * One month of transactions: a compacted segment plus buffers of the transactions appended
+     * since it was built. Appends take no lock; they go to the newest buffer. Compaction first
+     * starts a new buffer for appends, then seals the old one, waits for the appends already
+     * under way in it and merges it into a new segment. Every step swaps in a new {@link State},
+     * so readers always see a consistent set.
+     */
+    private static final class Partition implements Month {
+        private final YearMonth month;
+        private volatile State state = new State(Segment.EMPTY, null, new RecordBuffer());
+        // Directory the month is offloaded to, or null while it is kept in memory. Guarded by the
+        // partition, which compaction and offloading hold.
+        private Path directory;
+        private int fileVersion;
+
+        Partition(YearMonth month) {
+            this.month = month;
+        }
+
+        void add(Transaction transaction) {
+            while (!state.recent.add(transaction)) {
+                // Sealed by a compaction, which has already started the buffer to append to.
+            }
+        }
+
+        @Override
+        public int size() {
+            State state = this.state;
+            return state.segment.size + (state.sealed != null ? state.sealed.size() : 0) + state.recent.size();
+        }
+
+        @Override
+        public Iterator<Transaction> iterator(Filter filter) {
+            return state.version(false, false).iterator(filter);
+        }
+
+        @Override
+        public void addTotals(Filter filter, long[] sums) {
+            state.version(true, false).addTotals(filter, sums);
+        }
+
+        /**
+         * Returns the month as it is now, including every append that has returned.
+         */
+        Version settledVersion() {
+            return state.version(true, true);
+        }
+
+        synchronized void compact() {
+            State current = state;
+            if (current.recent.isEmpty()) {
+                return;
+            }
+            Segment merged = drain(current);
+            if (directory != null) {
+                try {
+                    merged = store(current.segment, merged);
+                } catch (IOException e) {
+                    // Keep the month in memory rather than fail the compaction.
+                    directory = null;
+                }
+            }
+            state = new State(merged, null, state.recent);
+        }
+
+        synchronized void offload(Path directory) throws IOException {
+            State current = state;
+            if (this.directory != null && current.recent.isEmpty()) {
+                return;
+            }
+            Segment merged = current.recent.isEmpty() ? current.segment : drain(current);
+            Path previous = this.directory;
+            this.directory = directory;
+            try {
+                merged = store(current.segment, merged);
+            } catch (IOException e) {
+                this.directory = previous;
+                throw e;
+            } finally {
+                state = new State(merged, null, state.recent);
+            }
+        }
+
+        // Moves appends to a new buffer and merges the old one, once sealed, into the segment.
+        private Segment drain(State current) {
+            state = new State(current.segment, current.recent, new RecordBuffer());
+            int count = current.recent.seal();
+            return Segment.merge(current.segment, current.recent, count);
+        }
+
+        private Segment store(Segment old, Segment merged) throws IOException {
+            Path file = directory.resolve("transactions-" + month + "." + (++fileVersion) + ".bin");
+            Segment stored = merged.writeTo(file);
+            if (old.file != null) {
+                try {
+                    Files.deleteIfExists(old.file);
+                } catch (IOException e) {
+                    // Still mapped on some platforms; it is only wasted disk space.
+                }
+            }
+            return stored;
+        }
+    }
+
+    /**
+     * A month's segment and buffers as they stood together. Only compaction replaces one.
+     */
+    private static final class State {
+        final Segment segment;
+        // The buffer a compaction in progress is merging into a new segment, or null.
+        final RecordBuffer sealed;
+        final RecordBuffer recent;
+
+        State(Segment segment, RecordBuffer sealed, RecordBuffer recent) {
+            this.segment = segment;
+            this.sealed = sealed;
+            this.recent = recent;
+        }
+
+        /**
+         * A fixed version stops at the records published so far, or, if {@code settled}, at the
+         * records claimed so far once they are all published.
+         */
+        Version version(boolean fixed, boolean settled) {
+            RecordBuffer[] buffers = sealed != null ? new RecordBuffer[] {sealed, recent} : new RecordBuffer[] {recent};
+            int[] counts = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                counts[i] = settled ? buffers[i].settledSize() : buffers[i].size();
+            }
+            return new Version(segment, buffers, counts, fixed);
+        }
+    }
+
+    /**
+     * One month's segment and buffers of recent appends as they stood together. A fixed version
+     * reads only the transactions that were in the buffers then; otherwise it reads later ones
+     * too. Compaction replaces the segment rather than changing it, and a buffer only grows at its
+     * end, so a version can be read while the month moves on.
+     */
+    private static final class Version implements Month {
+        private final Segment segment;
+        private final RecordBuffer[] buffers;
+        private final int[] counts;
+        private final boolean fixed;
+
+        Version(Segment segment, RecordBuffer[] buffers, int[] counts, boolean fixed) {
+            this.segment = segment;
+            this.buffers = buffers;
+            this.counts = counts;
+            this.fixed = fixed;
+        }
+
+        @Override
+        public int size() {
+            int size = segment.size;
+            for (int count : counts) {
+                size += count;
+            }
+            return size;
+        }
+
+        @Override
+        public void addTotals(Filter filter, long[] sums) {
+            segment.addTotals(filter, segment.firstOnOrAfter(filter.fromDay), segment.size, sums);
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i].addTotals(filter, 0, counts[i], sums);
+            }
+        }
+
+        @Override
+        public Iterator<Transaction> iterator(Filter filter) {
+            int segmentCode = filter.singleProduct ? segment.codeOf(filter.productId) : Records.ANY_PRODUCT;
+            int[] bufferCodes = new int[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                bufferCodes[i] = filter.singleProduct ? buffers[i].codeOf(filter.productId) : Records.ANY_PRODUCT;
+            }
+            int start = segmentCode == Records.NO_PRODUCT ? segment.size : segment.firstOnOrAfter(filter.fromDay);
+            return new Iterator<Transaction>() {
+                private int row = start;
+                private int buffer;
+                private int bufferRow;
+                private Transaction next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next != null) {
+                        return true;
+                    }
+                    // Compacted records are sorted by day, so the first one past the range ends them.
+                    while (row < segment.size && segment.epochDay(row) <= filter.toDay) {
+                        if (segment.matches(row, filter, segmentCode)) {
+                            next = segment.get(row++);
+                            return true;
+                        }
+                        row++;
+                    }
+                    for (; buffer < buffers.length; buffer++, bufferRow = 0) {
+                        RecordBuffer recent = buffers[buffer];
+                        int end = bufferCodes[buffer] == Records.NO_PRODUCT ? 0 : fixed ? counts[buffer] : recent.size();
+                        while (bufferRow < end) {
+                            if (recent.matches(bufferRow, filter, bufferCodes[buffer])) {
+                                next = recent.get(bufferRow++);
+                                return true;
+                            }
+                            bufferRow++;
+                        }
+                    }
+                    return false;
+                }
+
+                @Override
+                public Transaction next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Transaction transaction = next;
+                    next = null;
+                    return transaction;
+                }
+            };
+        }
+    }
+
+    /**
+     * Transactions packed into fixed-width records, with products stored once each and referenced
+     * by code:
+     *
+     * <pre>
+     * record  transaction id, product code, quantity, epoch day (ints), type (byte),
+     *         unit price in cents (long)
+     * </pre>
+     *
+     * That is 25 bytes a transaction, against several dozen for a Transaction object with its own
+     * LocalDate. Subclasses say where a row's record is.
+     */
+    private abstract static class Records {
+        static final int RECORD_SIZE = 25;
+        // Codes for a query on any product, and for one on a product that has no records here.
+        static final int ANY_PRODUCT = -1;
+        static final int NO_PRODUCT = -2;
+        private static final TransactionType[] TYPES = TransactionType.values();
+
+        abstract ByteBuffer buffer(int row);
+
+        abstract int offset(int row);
+
+        abstract Product product(int code);
+
+        /**
+         * Returns the product's code, or {@link #NO_PRODUCT} if it has no records here.
+         */
+        abstract int codeOf(int productId);
+
+        static void write(ByteBuffer records, int offset, int transactionId, int productCode, int quantity,
+                          int epochDay, int type, long unitPriceCents) {
+            records.putInt(offset, transactionId);
+            records.putInt(offset + 4, productCode);
+            records.putInt(offset + 8, quantity);
+            records.putInt(offset + 12, epochDay);
+            records.put(offset + 16, (byte) type);
+            records.putLong(offset + 17, unitPriceCents);
+        }
+
+        // Copies a record, giving it a new product code.
+        static void copy(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset, int productCode) {
+            write(to, toOffset, from.getInt(fromOffset), productCode, from.getInt(fromOffset + 8),
+                    from.getInt(fromOffset + 12), from.get(fromOffset + 16), from.getLong(fromOffset + 17));
+        }
+
+        int epochDay(int row) {
+            return buffer(row).getInt(offset(row) + 12);
+        }
+
+        int productCode(int row) {
+            return buffer(row).getInt(offset(row) + 4);
+        }
+
+        boolean matches(int row, Filter filter, int productCode) {
+            ByteBuffer records = buffer(row);
+            int offset = offset(row);
+            int day = records.getInt(offset + 12);
+            return day >= filter.fromDay && day <= filter.toDay
+                    && (productCode == ANY_PRODUCT || records.getInt(offset + 4) == productCode);
+        }
+
+        Transaction get(int row) {
+            ByteBuffer records = buffer(row);
+            int offset = offset(row);
+            return new Transaction(records.getInt(offset), product(records.getInt(offset + 4)),
+                    records.getInt(offset + 8), LocalDate.ofEpochDay(records.getInt(offset + 12)),
+                    TYPES[records.get(offset + 16)], records.getLong(offset + 17));
+        }
+
+        /**
+         * Adds up the matching records from row {@code from} to {@code to} (exclusive) into
+         * {@code sums}, as {@link Month#addTotals} describes.
+         */
+        abstract void addTotals(Filter filter, int from, int to, long[] sums);
+
+        // The loop behind addTotals, over the records of one buffer from byte offset from to to.
+        static void addTotals(ByteBuffer records, int from, int to, Filter filter, int productCode, long[] sums) {
+            long fromDay = filter.fromDay;
+            long toDay = filter.toDay;
+            for (int offset = from; offset < to; offset += RECORD_SIZE) {
+                int day = records.getInt(offset + 12);
+                if (day < fromDay || day > toDay
+                        || (productCode != ANY_PRODUCT && records.getInt(offset + 4) != productCode)) {
+                    continue;
+                }
+                int quantity = records.getInt(offset + 8);
+                int index = records.get(offset + 16) * 3;
+                sums[index]++;
+                sums[index + 1] += quantity;
+                sums[index + 2] += Money.times(quantity, records.getLong(offset + 17));
+            }
+        }
+    }
+
+    /**
+     * The transactions appended to a month since it was last compacted, as records in chunks that
+     * are never moved once allocated. Appends take no lock: each claims a row with one atomic
+     * increment, writes its record there and marks it written in its chunk. Each chunk raises a
+     * watermark over the records written in order from its start, and the buffer's published size
+     * follows the chunks' watermarks, so readers walk the first {@link #size()} records without
+     * locking while appends carry on. An append that is slow to write only delays when the
+     * records claimed after it become visible.
+     */
+    private static final class RecordBuffer extends Records {
+        private static final int CHUNK_SHIFT = 10;
+        private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+        // Added to the claim counter by seal(), so every row claimed afterwards is past it and
+        // unused. A month would need a billion appends between compactions to reach it.
+        private static final int SEALED = 1 << 30;
+
+        private final AtomicInteger claimed = new AtomicInteger();
+        private final AtomicInteger published = new AtomicInteger();
+        // Rows claimed before the buffer was sealed, or -1 while it is open.
+        private volatile int sealedAt = -1;
+        private final Directory<Chunk> chunks = new Directory<>();
+        private final Directory<Product> products = new Directory<>();
+        private final ConcurrentHashMap<Integer, Integer> codes = new ConcurrentHashMap<>();
+        private final AtomicInteger productCount = new AtomicInteger();
+
+        /**
+         * Appends the transaction, or returns false without appending it if the buffer is sealed.
+         */
+        boolean add(Transaction transaction) {
+            // Everything that can fail happens before the row is claimed, which must be written.
+            int productCode = code(transaction.getProduct());
+            int epochDay = (int) transaction.getDate().toEpochDay();
+            int type = transaction.getType().ordinal();
+            int row = claimed.getAndIncrement();
+            if (row >= SEALED) {
+                return false;
+            }
+            Chunk chunk = chunks.getOrCreate(row >>> CHUNK_SHIFT, Chunk::new);
+            write(chunk.records, offset(row), transaction.getTransactionId(), productCode, transaction.getQuantity(),
+                    epochDay, type, transaction.getUnitPriceCents());
+            chunk.commit(row & (CHUNK_RECORDS - 1));
+            publish();
+            return true;
+        }
+
+        private int code(Product product) {
+            Integer code = codes.get(product.getProductId());
+            if (code == null) {
+                code = codes.computeIfAbsent(product.getProductId(), id -> {
+                    int next = productCount.getAndIncrement();
+                    products.set(next, product);
+                    return next;
+                });
+            }
+            return code;
+        }
+
+        // Raises the published size over every chunk whose records are all written, and into the
+        // first one that is not as far as its watermark. Whichever append raises a chunk's
+        // watermark last also carries the size past it.
+        private void publish() {
+            while (true) {
+                int size = published.get();
+                Chunk chunk = chunks.get(size >>> CHUNK_SHIFT);
+                int end = chunk != null ? (size & -CHUNK_RECORDS) + chunk.committed.get() : size;
+                if (end <= size) {
+                    return;
+                }
+                published.compareAndSet(size, end);
+            }
+        }
+
+        /**
+         * Stops appends to the buffer, waits for the ones already under way and returns how many
+         * records it holds. Every row is published by then.
+         */
+        int seal() {
+            int count = claimed.getAndAdd(SEALED);
+            sealedAt = count;
+            awaitPublished(count);
+            return count;
+        }
+
+        /**
+         * Returns how many rows have been claimed, once all of them are published, so that every
+         * append that returned before the call is counted.
+         */
+        int settledSize() {
+            int count = claimed.get();
+            if (count >= SEALED) {
+                while ((count = sealedAt) < 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            awaitPublished(count);
+            return count;
+        }
+
+        private void awaitPublished(int count) {
+            while (published.get() < count) {
+                Thread.yield();
+            }
+        }
+
+        boolean isEmpty() {
+            return claimed.get() == 0;
+        }
+
+        int size() {
+            return published.get();
+        }
+
+        int productCount() {
+            return productCount.get();
+        }
+
+        @Override
+        ByteBuffer buffer(int row) {
+            return chunks.get(row >>> CHUNK_SHIFT).records;
+        }
+
+        @Override
+        int offset(int row) {
+            return (row & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+        }
+
+        /**
+         * Returns the product with that code, or null for a code an append took just before
+         * finding the buffer sealed.
+         */
+        @Override
+        Product product(int code) {
+            return products.get(code);
+        }
+
+        @Override
+        int codeOf(int productId) {
+            Integer code = codes.get(productId);
+            return code != null ? code : NO_PRODUCT;
+        }
+
+        @Override
+        void addTotals(Filter filter, int from, int to, long[] sums) {
+            int productCode = filter.singleProduct ? codeOf(filter.productId) : ANY_PRODUCT;
+            if (productCode == NO_PRODUCT) {
+                return;
+            }
+            for (int row = from; row < to; row = (row | (CHUNK_RECORDS - 1)) + 1) {
+                int end = Math.min(to, (row | (CHUNK_RECORDS - 1)) + 1);
+                addTotals(buffer(row), offset(row), offset(end - 1) + RECORD_SIZE, filter, productCode, sums);
+            }
+        }
+
+        /**
+         * A chunk of records, with a bit per record set once it is written and a watermark below
+         * which every record is.
+         */
+        private static final class Chunk {
+            final ByteBuffer records = ByteBuffer.allocate(CHUNK_RECORDS * RECORD_SIZE);
+            private final AtomicLongArray written = new AtomicLongArray(CHUNK_RECORDS / Long.SIZE);
+            final AtomicInteger committed = new AtomicInteger();
+
+            void commit(int slot) {
+                written.getAndAccumulate(slot >>> 6, 1L << slot, (bits, bit) -> bits | bit);
+                // Whichever append writes the record at the watermark carries it past the ones
+                // written after it.
+                int mark;
+                while ((mark = committed.get()) < CHUNK_RECORDS && (written.get(mark >>> 6) & 1L << mark) != 0) {
+                    committed.compareAndSet(mark, mark + 1);
+                }
+            }
+        }
+
+        /**
+         * Slots that are allocated in blocks of doubling size and never moved, so the directory
+         * grows without copying or locking. Block b holds the slots from 2^b - 1 to 2^(b+1) - 2.
+         */
+        private static final class Directory<T> {
+            private final AtomicReferenceArray<AtomicReferenceArray<T>> blocks =
+                    new AtomicReferenceArray<>(Integer.SIZE);
+
+            T get(int index) {
+                int block = block(index);
+                AtomicReferenceArray<T> slots = blocks.get(block);
+                return slots != null ? slots.get(index + 1 - (1 << block)) : null;
+            }
+
+            T getOrCreate(int index, Supplier<T> create) {
+                int block = block(index);
+                AtomicReferenceArray<T> slots = slots(block);
+                int slot = index + 1 - (1 << block);
+                T value = slots.get(slot);
+                if (value == null) {
+                    slots.compareAndSet(slot, null, create.get());
+                    value = slots.get(slot);
+                }
+                return value;
+            }
+
+            void set(int index, T value) {
+                int block = block(index);
+                slots(block).set(index + 1 - (1 << block), value);
+            }
+
+            private AtomicReferenceArray<T> slots(int block) {
+                AtomicReferenceArray<T> slots = blocks.get(block);
+                if (slots == null) {
+                    blocks.compareAndSet(block, null, new AtomicReferenceArray<>(1 << block));
+                    slots = blocks.get(block);
+                }
+                return slots;
+            }
+
+            private static int block(int index) {
+                return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(index + 1);
+            }
+        }
+    }
+
+    /**
+     * Immutable run of compacted records sorted by date, in a heap buffer or a memory-mapped file.
+     */
+    private static final class Segment extends Records {
+        static final Segment EMPTY = new Segment(ByteBuffer.allocate(0), new Product[0], 0, null);
+
+        final ByteBuffer records;
+        final Product[] products;
+        final int size;
+        final Path file;
+        // Product id in the high half and its code in the low, sorted, for codeOf's binary search.
+        private final long[] codesById;
+
+        private Segment(ByteBuffer records, Product[] products, int size, Path file) {
+            this.records = records;
+            this.products = products;
+            this.size = size;
+            this.file = file;
+            this.codesById = new long[products.length];
+            for (int code = 0; code < products.length; code++) {
+                codesById[code] = ((long) products[code].getProductId() << 32) | code;
+            }
+            Arrays.sort(codesById);
+        }
+
+        /**
+         * Merges the first {@code recentCount} records of {@code recent} into {@code segment}.
+         * Records of the same day keep the order they were appended in, compacted ones first.
+         */
+        static Segment merge(Segment segment, RecordBuffer recent, int recentCount) {
+            // Appended rows sorted by day and then row: the day in the high half, the row in the low.
+            long[] order = new long[recentCount];
+            for (int row = 0; row < recentCount; row++) {
+                order[row] = ((long) recent.epochDay(row) << 32) | row;
+            }
+            Arrays.sort(order);
+
+            // The segment's products keep their codes and the new ones are numbered after them.
+            List<Product> products = new ArrayList<>(Arrays.asList(segment.products));
+            Map<Integer, Integer> codes = new HashMap<>();
+            for (int code = 0; code < segment.products.length; code++) {
+                codes.put(segment.products[code].getProductId(), code);
+            }
+            int[] recoded = new int[recent.productCount()];
+            for (int code = 0; code < recoded.length; code++) {
+                Product product = recent.product(code);
+                if (product == null) {
+                    continue;
+                }
+                Integer merged = codes.get(product.getProductId());
+                if (merged == null) {
+                    merged = products.size();
+                    codes.put(product.getProductId(), merged);
+                    products.add(product);
+                }
+                recoded[code] = merged;
+            }
+
+            int size = segment.size + recentCount;
+            ByteBuffer records = ByteBuffer.allocate(Math.multiplyExact(size, RECORD_SIZE));
+            int row = 0;
+            int next = 0;
+            for (int out = 0; out < size; out++) {
+                int offset = out * RECORD_SIZE;
+                if (next == recentCount || (row < segment.size && segment.epochDay(row) <= (int) (order[next] >> 32))) {
+                    copy(segment.records, row * RECORD_SIZE, records, offset, segment.productCode(row));
+                    row++;
+                } else {
+                    int recentRow = (int) order[next++];
+                    copy(recent.buffer(recentRow), recent.offset(recentRow), records, offset,
+                            recoded[recent.productCode(recentRow)]);
+                }
+            }
+            return new Segment(records, products.toArray(new Product[0]), size, null);
+        }
+
+        /**
+         * Writes the records to {@code file} (through a temporary file renamed into place) and
+         * returns a segment that reads them from a mapping of it.
+         */
+        Segment writeTo(Path file) throws IOException {
+            Path temporary = AtomicFiles.createTempFileFor(file);
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer source = records.duplicate();
+                    source.clear().limit(size * RECORD_SIZE);
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) size * RECORD_SIZE),
+                        products, size, file);
+            }
+        }
+
+        @Override
+        ByteBuffer buffer(int row) {
+            return records;
+        }
+
+        @Override
+        int offset(int row) {
+            return row * RECORD_SIZE;
+        }
+
+        @Override
+        Product product(int code) {
+            return products[code];
+        }
+
+        @Override
+        void addTotals(Filter filter, int from, int to, long[] sums) {
+            int productCode = filter.singleProduct ? codeOf(filter.productId) : ANY_PRODUCT;
+            if (productCode == NO_PRODUCT) {
+                return;
+            }
+            // Records are sorted by day, so the range ends at the first one past it.
+            int end = filter.toDay >= Integer.MAX_VALUE ? to : Math.min(to, firstOnOrAfter(filter.toDay + 1));
+            addTotals(records, from * RECORD_SIZE, end * RECORD_SIZE, filter, productCode, sums);
+        }
+
+        @Override
+        int codeOf(int productId) {
+            int low = 0;
+            int high = codesById.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int id = (int) (codesById[middle] >> 32);
+                if (id < productId) {
+                    low = middle + 1;
+                } else if (id > productId) {
+                    high = middle - 1;
+                } else {
+                    return (int) codesById[middle];
+                }
+            }
+            return NO_PRODUCT;
+        }
+
+        // Records are sorted by day, so the first one in range is found by binary search.
+        int firstOnOrAfter(long day) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (epochDay(middle) < day) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staff accounts keyed by username, with sessions for users who have logged in.
+ *
+ * Looking a user up is a hash lookup, however many accounts there are. Verifying a password is
+ * deliberately slow (see {@link PasswordHash}), so it is done once, at {@link #login}; the
+ * returned session token is then checked with a map lookup for each later operation until it
+ * has gone unused for the idle timeout or is ended with {@link #logout}.
+ *
+ * A login attempt for a username that does not exist still hashes the password, so response
+ * time does not reveal which usernames are taken.
+ */
+class UserStore {
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    private static final int TOKEN_BYTES = 32;
+    // Expired sessions are swept out every this many logins; lookups drop them as they find them.
+    private static final int SWEEP_INTERVAL = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Checked against when the username is unknown, so a miss costs the same as a wrong password.
+    private static final PasswordHash UNKNOWN_USER = PasswordHash.create("");
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+    private final AtomicLong logins = new AtomicLong();
+
+    public UserStore() {
+        this(DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public UserStore(Duration idleTimeout) {
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Adds an account.
+     *
+     * @throws IllegalArgumentException if the username is already taken
+     */
+    public void addUser(User user) {
+        if (users.putIfAbsent(user.getUsername(), user) != null) {
+            throw new IllegalArgumentException("Username already exists: " + user.getUsername());
+        }
+    }
+
+    /**
+     * Removes an account and ends all of its sessions.
+     */
+    public void removeUser(String username) {
+        User removed = users.remove(username);
+        if (removed != null) {
+            sessions.values().removeIf(session -> session.user == removed);
+        }
+    }
+
+    public User getUser(String username) {
+        return username == null ? null : users.get(username);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Checks a username and password, returning the user or null if either is wrong.
+     */
+    public User authenticate(String username, String password) {
+        User user = getUser(username);
+        if (user == null) {
+            UNKNOWN_USER.matches(password);
+            return null;
+        }
+        return user.checkPassword(password) ? user : null;
+    }
+
+    /**
+     * Checks a username and password and, if they are right, starts a session.
+     *
+     * @return the session token to pass to {@link #getSessionUser(String)}, or null if the
+     *         username or password is wrong
+     */
+    public String login(String username, String password) {
+        User user = authenticate(username, password);
+        if (user == null) {
+            return null;
+        }
+        if (logins.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            long now = System.nanoTime();
+            sessions.values().removeIf(session -> session.isExpired(now, idleTimeoutNanos));
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(user, System.nanoTime()));
+        return token;
+    }
+
+    /**
+     * Returns the user a session belongs to, or null if the token is unknown, ended or has been
+     * idle too long. Each successful lookup restarts the idle timeout.
+     */
+    public User getSessionUser(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (session.isExpired(now, idleTimeoutNanos)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastUsed = now;
+        return session.user;
+    }
+
+    public void logout(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    private static class Session {
+        private final User user;
+        private volatile long lastUsed;
+
+        private Session(User user, long lastUsed) {
+            this.user = user;
+            this.lastUsed = lastUsed;
+        }
+
+        private boolean isExpired(long now, long idleTimeoutNanos) {
+            return now - lastUsed > idleTimeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Wraps another {@link InventoryStore} so readers can take a point-in-time {@link Snapshot} of it
+ * while writers carry on. Snapshots are copy-on-write: opening one copies nothing, and each write
+ * while it is open first saves the product's old values into it, once per product. A snapshot
+ * reads the live store and substitutes those saved values, so it costs memory in proportion to
+ * how many products change while it is open, and the saved values are dropped when it is closed.
+ *
+ * A write takes the read side of one of a set of lock stripes, picked by product id, and opening
+ * a snapshot takes the write side of all of them, only for as long as it takes to register it, so
+ * no write is ever half in and half out of a snapshot. Writes to products on different stripes
+ * touch different locks, so they do not contend with each other here any more than they do in
+ * the wrapped store's own stock locks. Adding several products at once takes every stripe.
+ */
+class VersionedInventoryStore implements InventoryStore {
+    // Number of lock stripes; a power of two so a product id maps to a stripe with a mask.
+    private static final int LOCK_STRIPES = 64;
+
+    private final InventoryStore store;
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
+    private final Set<Snapshot> open = new CopyOnWriteArraySet<>();
+
+    public VersionedInventoryStore(InventoryStore store) {
+        this.store = store;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Opens a view of the catalogue as it is now. Close it when done, or every later write keeps
+     * saving old values into it.
+     */
+    public Snapshot openSnapshot() {
+        for (ReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            Snapshot snapshot = new Snapshot(store.size());
+            open.add(snapshot);
+            return snapshot;
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * How many snapshots are open.
+     */
+    public int getOpenSnapshotCount() {
+        return open.size();
+    }
+
+    // The lock a write to the product shares with the other writes on its stripe.
+    private Lock stripe(int productId) {
+        int hash = productId ^ (productId >>> 16);
+        return locks[hash & (LOCK_STRIPES - 1)].readLock();
+    }
+
+    // Caller holds the product's lock. Reads the old values before the write, so a snapshot that
+    // already holds values for the product keeps the older ones.
+    private void preserve(int productId) {
+        if (open.isEmpty()) {
+            return;
+        }
+        Version version = Version.of(store.getProductById(productId));
+        for (Snapshot snapshot : open) {
+            snapshot.preserved.putIfAbsent(productId, version);
+        }
+    }
+
+    @Override
+    public void addProduct(Product product) {
+        Lock lock = stripe(product.getProductId());
+        lock.lock();
+        try {
+            preserve(product.getProductId());
+            store.addProduct(product);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addProducts(Collection<Product> products) {
+        for (ReadWriteLock lock : locks) {
+            lock.readLock().lock();
+        }
+        try {
+            if (!open.isEmpty()) {
+                for (Product product : products) {
+                    preserve(product.getProductId());
+                }
+            }
+            store.addProducts(products);
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void updateProduct(Product product) {
+        Lock lock = stripe(product.getProductId());
+        lock.lock();
+        try {
+            preserve(product.getProductId());
+            store.updateProduct(product);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateQuantityInStock(int productId, int quantityInStock) {
+        Lock lock = stripe(productId);
+        lock.lock();
+        try {
+            preserve(productId);
+            store.updateQuantityInStock(productId, quantityInStock);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int adjustQuantityInStock(int productId, int delta) {
+        Lock lock = stripe(productId);
+        lock.lock();
+        try {
+            preserve(productId);
+            return store.adjustQuantityInStock(productId, delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int computeQuantityInStock(int productId, IntUnaryOperator update) {
+        Lock lock = stripe(productId);
+        lock.lock();
+        try {
+            preserve(productId);
+            return store.computeQuantityInStock(productId, update);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeProduct(int productId) {
+        Lock lock = stripe(productId);
+        lock.lock();
+        try {
+            preserve(productId);
+            store.removeProduct(productId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Product getProductById(int productId) {
+        return store.getProductById(productId);
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        return store.getAllProducts();
+    }
+
+    @Override
+    public Product getProductByName(String productName) {
+        return store.getProductByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByName(String productName) {
+        return store.getProductsByName(productName);
+    }
+
+    @Override
+    public List<Product> getProductsByCategory(String category) {
+        return store.getProductsByCategory(category);
+    }
+
+    @Override
+    public Set<String> getCategories() {
+        return store.getCategories();
+    }
+
+    @Override
+    public CategoryStats getCategoryStats(String category) {
+        return store.getCategoryStats(category);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ProductCursor cursor() {
+        return store.cursor();
+    }
+
+    /**
+     * A product's fields at one moment, or {@link #ABSENT} for a product that did not exist.
+     */
+    private static final class Version {
+        static final Version ABSENT = new Version(null, 0, 0, null);
+
+        final String productName;
+        final int quantityInStock;
+        final double price;
+        final String category;
+
+        private Version(String productName, int quantityInStock, double price, String category) {
+            this.productName = productName;
+            this.quantityInStock = quantityInStock;
+            this.price = price;
+            this.category = category;
+        }
+
+        static Version of(Product product) {
+            return product == null ? ABSENT
+                    : new Version(product.getProductName(), product.getQuantityInStock(), product.getPrice(),
+                            product.getCategory());
+        }
+
+        Product toProduct(int productId) {
+            return this == ABSENT ? null : new Product(productId, productName, quantityInStock, price, category);
+        }
+    }
+
+    /**
+     * The catalogue as it was when {@link #openSnapshot()} returned. Products it hands out are
+     * detached copies. Safe to read from several threads at once; reading after {@link #close()}
+     * throws IllegalStateException.
+     */
+    class Snapshot implements AutoCloseable {
+        // Old values of the products written since the snapshot was opened, by id.
+        private final Map<Integer, Version> preserved = new ConcurrentHashMap<>();
+        private final int size;
+        private volatile boolean closed;
+
+        private Snapshot(int size) {
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * How many products have changed since the snapshot was opened, i.e. how many old versions
+         * it is holding on to.
+         */
+        public int getPreservedCount() {
+            return preserved.size();
+        }
+
+        public Product getProductById(int productId) {
+            checkOpen();
+            // The live values are read before the saved ones: a write saves the old values before
+            // changing anything, so if the live read saw the change, the lookup below finds them.
+            Version live = Version.of(store.getProductById(productId));
+            Version old = preserved.get(productId);
+            return (old != null ? old : live).toProduct(productId);
+        }
+
+        /**
+         * Returns copies of every product in the snapshot, in the order {@link #cursor()} gives.
+         */
+        public List<Product> getAllProducts() {
+            List<Product> products = new ArrayList<>(size);
+            ProductCursor product = cursor();
+            while (product.next()) {
+                products.add(new Product(product.getProductId(), product.getProductName(),
+                        product.getQuantityInStock(), product.getPrice(), product.getCategory()));
+            }
+            return products;
+        }
+
+        /**
+         * Returns a cursor over the snapshot: the products of the live store in its order, as they
+         * were when the snapshot was opened, followed by those removed since.
+         */
+        public ProductCursor cursor() {
+            checkOpen();
+            return new SnapshotCursor();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            open.remove(this);
+            preserved.clear();
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
+
+        private class SnapshotCursor implements ProductCursor {
+            // Products already returned, so one the live store moved or re-added is not listed twice.
+            private final IdSet returned = new IdSet();
+            private ProductCursor live = store.cursor();
+            private Iterator<Map.Entry<Integer, Version>> removed;
+            private int productId;
+            private String productName;
+            private int quantityInStock;
+            private double price;
+            private String category;
+
+            @Override
+            public boolean next() {
+                checkOpen();
+                while (removed == null) {
+                    boolean found;
+                    try {
+                        found = live.next();
+                    } catch (ConcurrentModificationException e) {
+                        // The live store moved its rows; walk it again and skip what was returned.
+                        live = store.cursor();
+                        continue;
+                    }
+                    if (!found) {
+                        removed = preserved.entrySet().iterator();
+                        break;
+                    }
+                    int id = live.getProductId();
+                    if (returned.contains(id)) {
+                        continue;
+                    }
+                    Version version = new Version(live.getProductName(), live.getQuantityInStock(), live.getPrice(),
+                            live.getCategory());
+                    Version old = preserved.get(id);
+                    if (old != null) {
+                        version = old;
+                    }
+                    if (version != Version.ABSENT && set(id, version)) {
+                        return true;
+                    }
+                }
+                while (removed.hasNext()) {
+                    Map.Entry<Integer, Version> entry = removed.next();
+                    if (entry.getValue() != Version.ABSENT && set(entry.getKey(), entry.getValue())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            // Moves to the product unless it was returned before.
+            private boolean set(int id, Version version) {
+                if (!returned.add(id)) {
+                    return false;
+                }
+                productId = id;
+                productName = version.productName;
+                quantityInStock = version.quantityInStock;
+                price = version.price;
+                category = version.category;
+                return true;
+            }
+
+            @Override
+            public int getProductId() {
+                return productId;
+            }
+
+            @Override
+            public String getProductName() {
+                return productName;
+            }
+
+            @Override
+            public int getQuantityInStock() {
+                return quantityInStock;
+            }
+
+            @Override
+            public double getPrice() {
+                return price;
+            }
+
+            @Override
+            public String getCategory() {
+                return category;
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import jmh.InventoryWorkload;
+import jmh.PersistenceWorkload;
+import jmh.ReportWorkload;
+import jmh.TransactionWorkload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The work the JMH benchmarks in jmh/ time, written against the application classes. JMH only
+ * runs benchmarks in a named package, which cannot import these default-package classes, so
+ * each benchmark loads one of the workloads below by name and calls it through an interface.
+ *
+ * Build and run the benchmarks with Maven:
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar [benchmark regex] [-p products=1000] [-rf json]
+ */
+public class BenchmarkWorkloads {
+    private BenchmarkWorkloads() {
+    }
+
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product("Product-" + i, 1_000_000, 1 + (i % 1000) / 100.0, "category-" + (i % 50)));
+        }
+        return products;
+    }
+
+    public static class Inventory implements InventoryWorkload {
+        private int size;
+        private List<Product> products;
+        private InventoryManager inventoryManager;
+        private ProductSearchIndex searchIndex;
+        private int[] ids;
+        private String[] names;
+        // Typeahead queries: a few characters from the start or the middle of each name.
+        private String[] queries;
+        private InventoryManager removalTarget;
+        private int[] removalIds;
+
+        @Override
+        public void setUp(int products) {
+            size = products;
+            this.products = products(products);
+            inventoryManager = new InventoryManager();
+            inventoryManager.addProducts(this.products);
+            ids = new int[products];
+            names = new String[products];
+            queries = new String[products];
+            Random random = new Random(42);
+            for (int i = 0; i < products; i++) {
+                Product product = this.products.get(i);
+                ids[i] = product.getProductId();
+                names[i] = product.getProductName();
+                int from = random.nextInt(4);
+                queries[i] = names[i].substring(from, Math.min(names[i].length(), from + 3 + random.nextInt(6)));
+            }
+            searchIndex = new ProductSearchIndex(inventoryManager);
+            searchIndex.rebuild();
+        }
+
+        @Override
+        public Object addAll() {
+            InventoryManager target = new InventoryManager();
+            for (Product product : products) {
+                target.addProduct(product);
+            }
+            return target;
+        }
+
+        @Override
+        public Object lookupById(int product) {
+            return inventoryManager.getProductById(ids[product]);
+        }
+
+        @Override
+        public Object lookupByName(int product) {
+            return inventoryManager.getProductByName(names[product]);
+        }
+
+        @Override
+        public Object search(int product) {
+            return searchIndex.search(queries[product], 10);
+        }
+
+        @Override
+        public void fillRemovalTarget() {
+            removalTarget = new InventoryManager();
+            List<Product> fresh = products(size);
+            removalTarget.addProducts(fresh);
+            removalIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                removalIds[i] = fresh.get(i).getProductId();
+            }
+        }
+
+        @Override
+        public void removeAll() {
+            for (int id : removalIds) {
+                removalTarget.removeProduct(id);
+            }
+        }
+    }
+
+    public static class Transactions implements TransactionWorkload {
+        private int catalogueSize;
+        private Main ims;
+        private Product[] products;
+        private LocalDate today;
+        private List<Transaction> batch;
+
+        @Override
+        public void setUp(int products) {
+            catalogueSize = products;
+            ims = new Main();
+            this.products = products(products).toArray(new Product[0]);
+            for (Product product : this.products) {
+                ims.addProduct(product);
+            }
+            today = LocalDate.now();
+        }
+
+        @Override
+        public void record(long operation) {
+            Product product = products[(int) Long.remainderUnsigned(operation, products.length)];
+            ims.recordTransaction(new Transaction(product, 1, today,
+                    (operation & 1) == 0 ? TransactionType.SALE : TransactionType.PURCHASE));
+        }
+
+        @Override
+        public void prepareBatch(int transactions) {
+            setUp(catalogueSize);
+            batch = new ArrayList<>(transactions);
+            Random random = new Random(7);
+            for (int i = 0; i < transactions; i++) {
+                batch.add(new Transaction(products[random.nextInt(products.length)], 1, today,
+                        TransactionType.PURCHASE));
+            }
+        }
+
+        @Override
+        public Object recordBatch() {
+            return ims.recordTransactions(batch);
+        }
+    }
+
+    public static class Persistence implements PersistenceWorkload {
+        private int size;
+        private Path directory;
+        private String text;
+        // Saving to a different file than last time always writes every product.
+        private String otherText;
+        private String snapshot;
+        private Main source;
+        private List<Product> products;
+        private boolean alternate;
+
+        @Override
+        public void setUp(int products) throws IOException {
+            size = products;
+            directory = Files.createTempDirectory("inventory-benchmark");
+            text = directory.resolve("inventory.txt").toString();
+            otherText = directory.resolve("inventory-other.txt").toString();
+            snapshot = directory.resolve("inventory.snapshot").toString();
+            source = new Main();
+            this.products = products(products);
+            source.getInventoryManager().addProducts(this.products);
+            source.saveInventoryToFile(text);
+            source.saveInventorySnapshot(snapshot);
+        }
+
+        @Override
+        public void saveText() {
+            alternate = !alternate;
+            source.saveInventoryToFile(alternate ? otherText : text);
+        }
+
+        @Override
+        public void prepareDelta(int changes) {
+            source.saveInventoryToFile(otherText);
+            source.saveInventoryToFile(text);
+            Random random = new Random(5);
+            for (int i = 0; i < Math.min(changes, size); i++) {
+                source.getInventoryManager().adjustQuantityInStock(products.get(random.nextInt(size)).getProductId(), 1);
+            }
+        }
+
+        @Override
+        public void saveTextDelta() {
+            source.saveInventoryToFile(text);
+        }
+
+        @Override
+        public void loadText() {
+            new Main().loadInventoryFromFile(text);
+        }
+
+        @Override
+        public void importText() {
+            new Main().importInventoryFromFile(text);
+        }
+
+        @Override
+        public void saveSnapshot() {
+            source.saveInventorySnapshot(snapshot);
+        }
+
+        @Override
+        public void loadSnapshot() {
+            new Main().loadInventorySnapshot(snapshot);
+        }
+
+        @Override
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(Paths.get(text));
+            Files.deleteIfExists(IncrementalInventoryFile.deltaPath(Paths.get(text)));
+            Files.deleteIfExists(Paths.get(otherText));
+            Files.deleteIfExists(IncrementalInventoryFile.deltaPath(Paths.get(otherText)));
+            Files.deleteIfExists(Paths.get(snapshot));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    public static class Reports implements ReportWorkload {
+        private Main ims;
+        private SalesReportGenerator generator;
+        private Path report;
+
+        @Override
+        public void setUp(int transactions) throws IOException {
+            ims = new Main();
+            List<Product> products = products(1_000);
+            ims.getInventoryManager().addProducts(products);
+            Random random = new Random(11);
+            LocalDate start = LocalDate.now().minusDays(730);
+            List<Transaction> batch = new ArrayList<>(transactions);
+            for (int i = 0; i < transactions; i++) {
+                batch.add(new Transaction(products.get(random.nextInt(products.size())), 1 + random.nextInt(5),
+                        start.plusDays(i * 730L / transactions), TransactionType.PURCHASE));
+            }
+            ims.recordTransactions(batch);
+            generator = new SalesReportGenerator(ims.getTransactions(), ims.getInventoryManager());
+            report = Files.createTempFile("sales-report", ".txt");
+        }
+
+        @Override
+        public Object summary() {
+            return generator.buildSalesReport();
+        }
+
+        @Override
+        public Object rebuildAggregates() {
+            return new SalesReportGenerator(ims.getTransactions(), ims.getInventoryManager());
+        }
+
+        @Override
+        public void export() {
+            ims.exportSalesReport(report.toString(), null, null);
+        }
+
+        @Override
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(report);
+        }
+    }
+}
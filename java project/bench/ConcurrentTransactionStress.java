@@ -0,0 +1,143 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records sales and purchases from many threads at once through Main.recordTransaction and
+ * checks that every unit is accounted for afterwards: per-product stock, category totals and
+ * the transaction count must all match what the threads posted.
+ *
+ * The sharded store spreads stock over four warehouses, and one more thread keeps moving stock
+ * between them while the others run; transfers must not change any total either.
+ *
+ * Compile together with the application sources and run:
+ *   java ConcurrentTransactionStress [threads] [transactionsPerThread] [hash|columnar|sharded]
+ */
+public class ConcurrentTransactionStress {
+    private static final int PRODUCTS = 1_000;
+    private static final int INITIAL_STOCK = 1_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int transactionsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        String store = args.length > 2 ? args[2] : "hash";
+
+        ShardedInventoryStore sharded = store.equals("sharded")
+                ? new ShardedInventoryStore(List.of("north", "south", "east", "west"), InventoryManager::new)
+                : null;
+        Main ims = new Main(sharded != null ? sharded
+                : store.equals("columnar") ? new ColumnarInventoryManager() : new InventoryManager());
+        Product[] products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new Product("Product-" + i, INITIAL_STOCK, 2.5, "category-" + (i % 10));
+            ims.addProduct(products[i]);
+        }
+
+        // Net change posted per product, tracked independently of the inventory.
+        AtomicLongArray expectedDelta = new AtomicLongArray(PRODUCTS);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        LocalDate today = LocalDate.now();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            executor.execute(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < transactionsPerThread; i++) {
+                    int index = random.nextInt(PRODUCTS);
+                    int quantity = 1 + random.nextInt(5);
+                    boolean sale = random.nextInt(4) != 0;
+                    TransactionType type = sale ? TransactionType.SALE : TransactionType.PURCHASE;
+                    ims.recordTransaction(new Transaction(products[index], quantity, today, type));
+                    expectedDelta.addAndGet(index, sale ? -quantity : quantity);
+                }
+            });
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong transfers = new AtomicLong();
+        Thread mover = null;
+        if (sharded != null) {
+            List<String> warehouses = sharded.getWarehouses();
+            mover = new Thread(() -> {
+                Random random = new Random(-1);
+                while (!done.get()) {
+                    int index = random.nextInt(PRODUCTS);
+                    String from = warehouses.get(random.nextInt(warehouses.size()));
+                    String to = warehouses.get(random.nextInt(warehouses.size()));
+                    try {
+                        sharded.transfer(products[index].getProductId(), from, to, 1 + random.nextInt(100));
+                        transfers.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        // Not enough stock in that warehouse; pick another pair.
+                    }
+                }
+            });
+            mover.start();
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - began;
+        done.set(true);
+        if (mover != null) {
+            mover.join();
+        }
+
+        InventoryStore inventoryManager = ims.getInventoryManager();
+        int failures = 0;
+        long expectedUnits = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            long expected = INITIAL_STOCK + expectedDelta.get(i);
+            expectedUnits += expected;
+            int actual = inventoryManager.getProductById(products[i].getProductId()).getQuantityInStock();
+            if (actual != expected) {
+                failures++;
+                System.out.println("Lost update on " + products[i].getProductName()
+                        + ": expected " + expected + ", found " + actual);
+            }
+        }
+
+        long categoryUnits = 0;
+        for (String category : inventoryManager.getCategories()) {
+            categoryUnits += inventoryManager.getCategoryStats(category).getUnitsInStock();
+        }
+        if (categoryUnits != expectedUnits) {
+            failures++;
+            System.out.println("Category totals drifted: expected " + expectedUnits + ", found " + categoryUnits);
+        }
+
+        long totalTransactions = (long) threads * transactionsPerThread;
+        if (ims.getTransactions().size() != totalTransactions) {
+            failures++;
+            System.out.println("Transaction log holds " + ims.getTransactions().size()
+                    + " entries, expected " + totalTransactions);
+        }
+
+        System.out.printf("%d threads, %d transactions in %.1f ms (%.0f tx/s)%n", threads, totalTransactions,
+                elapsed / 1e6, totalTransactions / (elapsed / 1e9));
+        if (sharded != null) {
+            System.out.printf("%d transfers between %d warehouses%n", transfers.get(), sharded.getWarehouses().size());
+        }
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s) did not hold");
+            System.exit(1);
+        }
+        System.out.println("OK: no units lost");
+    }
+}
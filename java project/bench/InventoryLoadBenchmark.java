@@ -0,0 +1,128 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the old load path (Files.readAllLines + String.split + a Product per line) with the
+ * streaming InventoryFileReader and its parallel chunked mode on a generated inventory file. All
+ * paths build Products and discard them, so the figures measure reading and parsing rather than
+ * indexing. The parallel mode is run at 1, 2, 4, ... workers to show how it scales.
+ *
+ * Compile together with the application sources and run:
+ *   java -Xmx4g InventoryLoadBenchmark [rows] [file]
+ * The default is 10,000,000 rows in a temporary file, deleted afterwards unless a path is given.
+ */
+public class InventoryLoadBenchmark {
+    private static final String[] CATEGORIES = {"electronics", "food", "vehicle", "clothing", "toys"};
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        boolean temporary = args.length < 2;
+        Path file = temporary ? Files.createTempFile("inventory-bench", ".txt") : Paths.get(args[1]);
+        try {
+            if (temporary || !Files.exists(file)) {
+                generate(file, rows);
+            }
+            System.out.printf("%,d rows, %,d bytes%n", rows, Files.size(file));
+
+            // One untimed pass each so every path is compiled before measuring.
+            streaming(file);
+            legacy(file);
+            parallel(file, ForkJoinPool.commonPool());
+
+            for (int run = 1; run <= 3; run++) {
+                report("streaming", file, InventoryLoadBenchmark::streaming);
+                report("readAllLines+split", file, InventoryLoadBenchmark::legacy);
+            }
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int workers = 1; workers <= cores; workers *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                try {
+                    report("parallel x" + workers, file, path -> parallel(path, pool));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } finally {
+            if (temporary) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private interface Loader {
+        long load(Path file) throws IOException;
+    }
+
+    private static void report(String name, Path file, Loader loader) throws IOException {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        long loaded;
+        try {
+            loaded = loader.load(file);
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%-20s out of memory (max heap %,d MB)%n", name, runtime.maxMemory() >> 20);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%-20s %,12d rows %10.1f ms %10.0f rows/s   heap delta %,d MB%n", name, loaded,
+                elapsed / 1e6, loaded / (elapsed / 1e9), Math.max(0, after - before) >> 20);
+    }
+
+    private static long streaming(Path file) throws IOException {
+        long[] checksum = new long[1];
+        LoadReport report = new InventoryFileReader().read(file,
+                (productId, productName, quantityInStock, price, category) -> {
+                    Product product = new Product(productName, quantityInStock, price, category);
+                    checksum[0] += product.getQuantityInStock();
+                });
+        return report.getRowsLoaded();
+    }
+
+    private static long parallel(Path file, ForkJoinPool pool) throws IOException {
+        long[] checksum = new long[1];
+        LoadReport report = InventoryFileReader.readParallel(file, pool,
+                rows -> rows.forEach((productId, productName, quantityInStock, price, category) -> {
+                    Product product = new Product(productName, quantityInStock, price, category);
+                    checksum[0] += product.getQuantityInStock();
+                }));
+        return report.getRowsLoaded();
+    }
+
+    // The load loop as it stood before InventoryFileReader.
+    private static long legacy(Path file) throws IOException {
+        long checksum = 0;
+        long loaded = 0;
+        List<String> lines = Files.readAllLines(file);
+        for (String line : lines) {
+            String[] parts = line.split(",");
+            int productId = Integer.parseInt(parts[0]);
+            String productName = parts[1];
+            int quantityInStock = Integer.parseInt(parts[2]);
+            double price = Double.parseDouble(parts[3]);
+            String category = parts[4];
+            Product product = new Product(productName, quantityInStock, price, category);
+            checksum += product.getQuantityInStock() + productId;
+            loaded++;
+        }
+        return loaded;
+    }
+
+    private static void generate(Path file, int rows) throws IOException {
+        Random random = new Random(7);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 1; i <= rows; i++) {
+                writer.write(i + ",Product-" + i + "," + random.nextInt(10_000) + ","
+                        + (random.nextInt(100_000) / 100.0) + "," + CATEGORIES[i % CATEGORIES.length] + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Random;
+
+/**
+ * Times InventoryManager lookups by id and by name at growing catalogue sizes.
+ * With the hash indexes the per-lookup cost should stay flat as the catalogue grows.
+ *
+ * Compile together with the application sources and run:
+ *   java InventoryLookupBenchmark
+ */
+public class InventoryLookupBenchmark {
+    private static final int[] CATALOGUE_SIZES = {1_000, 10_000, 100_000, 500_000};
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        System.out.printf("%12s %16s %16s%n", "products", "byId ns/op", "byName ns/op");
+        for (int size : CATALOGUE_SIZES) {
+            InventoryManager inventoryManager = new InventoryManager();
+            int[] ids = new int[size];
+            String[] names = new String[size];
+            for (int i = 0; i < size; i++) {
+                Product product = new Product("Product-" + i, 100, 9.99, "category-" + (i % 50));
+                inventoryManager.addProduct(product);
+                ids[i] = product.getProductId();
+                names[i] = product.getProductName();
+            }
+
+            // Warm up both paths before measuring.
+            lookupById(inventoryManager, ids, LOOKUPS);
+            lookupByName(inventoryManager, names, LOOKUPS);
+
+            double byId = lookupById(inventoryManager, ids, LOOKUPS);
+            double byName = lookupByName(inventoryManager, names, LOOKUPS);
+            System.out.printf("%12d %16.1f %16.1f%n", size, byId, byName);
+        }
+    }
+
+    private static double lookupById(InventoryManager inventoryManager, int[] ids, int lookups) {
+        Random random = new Random(42);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (inventoryManager.getProductById(ids[random.nextInt(ids.length)]) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != lookups) {
+            throw new IllegalStateException("Missing products: " + (lookups - found));
+        }
+        return (double) elapsed / lookups;
+    }
+
+    private static double lookupByName(InventoryManager inventoryManager, String[] names, int lookups) {
+        Random random = new Random(42);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (inventoryManager.getProductByName(names[random.nextInt(names.length)]) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != lookups) {
+            throw new IllegalStateException("Missing products: " + (lookups - found));
+        }
+        return (double) elapsed / lookups;
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash-recovery check for the transaction journal. A child JVM records transactions from several
+ * threads and prints each transaction id once recordTransaction has returned (i.e. once it is
+ * durable). The parent kills the child with SIGKILL partway through a batch, then replays the
+ * journal and checks that
+ * <ul>
+ *   <li>every acknowledged transaction was recovered,</li>
+ *   <li>recovered stock equals the starting stock plus the recovered transactions, and</li>
+ *   <li>garbage appended after the last record (a torn write) is cut off on the next open.</li>
+ * </ul>
+ * It also checks that a checkpoint followed by a restart does not replay anything twice.
+ *
+ * Compile together with the application sources and run:
+ *   java JournalCrashCheck [rounds]
+ */
+public class JournalCrashCheck {
+    private static final int PRODUCTS = 50;
+    private static final int INITIAL_STOCK = 1_000_000;
+    private static final int CHILD_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            runChild(Paths.get(args[1]));
+            return;
+        }
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int failures = 0;
+        for (int round = 1; round <= rounds; round++) {
+            failures += crashRound(round);
+        }
+        failures += checkpointRound();
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " check(s) did not hold");
+            System.exit(1);
+        }
+        System.out.println("OK: journal recovered every acknowledged transaction");
+    }
+
+    private static int crashRound(int round) throws Exception {
+        Path directory = Files.createTempDirectory("journal-crash");
+        Path journalPath = directory.resolve("transactions.journal");
+        try {
+            Process child = new ProcessBuilder(javaExecutable(), "-cp", System.getProperty("java.class.path"),
+                    JournalCrashCheck.class.getName(), "child", journalPath.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            Set<Integer> acknowledged = new HashSet<>();
+            long killAfter = 2_000 + new Random(round).nextInt(10_000);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    acknowledged.add(Integer.parseInt(line));
+                    if (acknowledged.size() >= killAfter) {
+                        child.destroyForcibly();
+                        break;
+                    }
+                }
+            }
+            child.waitFor(30, TimeUnit.SECONDS);
+
+            int failures = 0;
+            Main recovered = startFresh();
+            recovered.openJournal(journalPath.toString());
+            Map<Integer, Transaction> replayed = new HashMap<>();
+            for (Transaction transaction : recovered.getTransactions()) {
+                replayed.put(transaction.getTransactionId(), transaction);
+            }
+            recovered.closeJournal();
+
+            for (int transactionId : acknowledged) {
+                if (!replayed.containsKey(transactionId)) {
+                    failures++;
+                    System.out.println("Round " + round + ": acknowledged transaction " + transactionId + " was lost");
+                    break;
+                }
+            }
+            failures += checkStock(recovered, replayed.values(), "round " + round);
+
+            // A torn write leaves a partial record behind; reopening must ignore and remove it.
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7}));
+            }
+            Main reopened = startFresh();
+            reopened.openJournal(journalPath.toString());
+            reopened.closeJournal();
+            if (reopened.getTransactions().size() != replayed.size()) {
+                failures++;
+                System.out.println("Round " + round + ": torn tail changed the replay: " + replayed.size()
+                        + " then " + reopened.getTransactions().size());
+            }
+
+            System.out.printf("Round %d: killed after %,d acknowledged, recovered %,d%n", round,
+                    acknowledged.size(), replayed.size());
+            return failures;
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static int checkpointRound() throws IOException {
+        Path directory = Files.createTempDirectory("journal-checkpoint");
+        Path journalPath = directory.resolve("transactions.journal");
+        Path snapshotPath = directory.resolve("inventory.snapshot");
+        try {
+            Main first = startFresh();
+            first.openJournal(journalPath.toString());
+            Product product = first.getInventoryManager().getProductById(1);
+            for (int i = 0; i < 10; i++) {
+                first.recordTransaction(new Transaction(product, 1, LocalDate.now(), TransactionType.SALE));
+            }
+            first.checkpoint(snapshotPath.toString());
+            for (int i = 0; i < 5; i++) {
+                first.recordTransaction(new Transaction(product, 1, LocalDate.now(), TransactionType.SALE));
+            }
+            first.closeJournal();
+
+            Main second = new Main();
+            second.loadInventorySnapshot(snapshotPath.toString());
+            second.openJournal(journalPath.toString());
+            second.closeJournal();
+            int stock = second.getInventoryManager().getProductById(1).getQuantityInStock();
+            if (stock != INITIAL_STOCK - 15 || second.getTransactions().size() != 5) {
+                System.out.println("Checkpoint: expected stock " + (INITIAL_STOCK - 15) + " with 5 replayed, found "
+                        + stock + " with " + second.getTransactions().size());
+                return 1;
+            }
+            System.out.println("Checkpoint: snapshot plus journal tail restored without double counting");
+            return 0;
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static int checkStock(Main recovered, Iterable<Transaction> replayed, String label) {
+        long[] expected = new long[PRODUCTS + 1];
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            expected[productId] = INITIAL_STOCK;
+        }
+        for (Transaction transaction : replayed) {
+            int sign = transaction.getType() == TransactionType.SALE ? -1 : 1;
+            expected[transaction.getProduct().getProductId()] += sign * transaction.getQuantity();
+        }
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            int actual = recovered.getInventoryManager().getProductById(productId).getQuantityInStock();
+            if (actual != expected[productId]) {
+                System.out.println(label + ": product " + productId + " has " + actual + ", expected "
+                        + expected[productId]);
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    // The child records until it is killed.
+    private static void runChild(Path journalPath) throws InterruptedException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new java.io.OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        Main ims = startFresh();
+        ims.openJournal(journalPath.toString());
+        Thread[] threads = new Thread[CHILD_THREADS];
+        for (int t = 0; t < threads.length; t++) {
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                while (true) {
+                    Product product = ims.getInventoryManager().getProductById(1 + random.nextInt(PRODUCTS));
+                    TransactionType type = random.nextBoolean() ? TransactionType.SALE : TransactionType.PURCHASE;
+                    Transaction transaction = new Transaction(product, 1 + random.nextInt(9), LocalDate.now(), type);
+                    ims.recordTransaction(transaction);
+                    synchronized (out) {
+                        out.println(transaction.getTransactionId());
+                        out.flush();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static Main startFresh() {
+        Main ims = new Main();
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            ims.addProduct(new Product(productId, "Product-" + productId, INITIAL_STOCK, 1.0, "crash-test"));
+        }
+        return ims;
+    }
+
+    private static String javaExecutable() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
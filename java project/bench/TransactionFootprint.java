@@ -0,0 +1,101 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Measures how much heap a long transaction history takes as objects (a Transaction and its own
+ * LocalDate per row, queued the way TransactionLog used to hold recent months) and as the packed
+ * records TransactionLog keeps now, both while months are still being appended to and after they
+ * are compacted. It also times adding up revenue over each, best of three: summing double prices
+ * over the objects against TransactionLog.totalsBetween over the records.
+ *
+ * Compile together with the application sources and run:
+ *   java -Xmx5g TransactionFootprint [transactions] [objects|records|both]
+ * The default is 50,000,000 transactions spread over two years, measured both ways. The object
+ * figure needs about 3.5 GB of heap at that size; run the two modes in separate JVMs if it does
+ * not fit alongside the records.
+ */
+public class TransactionFootprint {
+    private static final int PRODUCTS = 10_000;
+    private static final int DAYS = 730;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000_000;
+        String mode = args.length > 1 ? args[1] : "both";
+        Product[] products = new Product[PRODUCTS];
+        Random random = new Random(42);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new Product("Product-" + i, 1_000, 1 + random.nextInt(100_000) / 100.0, "category-" + (i % 10));
+        }
+        System.out.printf("%,d transactions over %d products and %d days%n", count, PRODUCTS, DAYS);
+
+        if (!mode.equals("records")) {
+            long before = usedHeap();
+            Queue<Transaction> objects = new ConcurrentLinkedQueue<>();
+            fill(products, count, objects::add);
+            report("objects", before, count);
+            double revenue = 0;
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long started = System.nanoTime();
+                revenue = 0;
+                for (Transaction transaction : objects) {
+                    if (transaction.getType() == TransactionType.SALE) {
+                        revenue += transaction.getQuantity() * transaction.getProduct().getPrice();
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - started);
+            }
+            System.out.printf("  revenue from objects (double): %.2f in %.0f ms%n", revenue, best / 1e6);
+            objects = null;
+        }
+
+        if (!mode.equals("objects")) {
+            long before = usedHeap();
+            // Enough hot months that nothing is compacted until asked to.
+            TransactionLog log = new TransactionLog(DAYS);
+            fill(products, count, log::append);
+            report("records, appended", before, count);
+            log.compactBefore(YearMonth.of(2100, 1));
+            report("records, compacted", before, count);
+            long cents = 0;
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long started = System.nanoTime();
+                cents = log.totalsBetween(null, null).getValueCents(TransactionType.SALE);
+                best = Math.min(best, System.nanoTime() - started);
+            }
+            System.out.printf("  revenue from records (cents): %s in %.0f ms%n", Money.format(cents), best / 1e6);
+        }
+    }
+
+    private interface Sink {
+        void add(Transaction transaction);
+    }
+
+    private static void fill(Product[] products, int count, Sink sink) {
+        Random random = new Random(7);
+        LocalDate first = LocalDate.of(2022, 1, 1);
+        for (int i = 0; i < count; i++) {
+            // Dates rise through the history, as they do in a running log.
+            LocalDate date = first.plusDays((long) i * DAYS / count);
+            sink.add(new Transaction(i + 1, products[random.nextInt(products.length)], 1 + random.nextInt(5), date,
+                    random.nextInt(4) == 0 ? TransactionType.PURCHASE : TransactionType.SALE));
+        }
+    }
+
+    private static void report(String label, long before, int count) {
+        long used = usedHeap() - before;
+        System.out.printf("%-20s %,8.1f MB  %5.1f bytes per transaction%n", label, used / 1e6, (double) used / count);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inventory add, lookup, typeahead search and remove at growing catalogue sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int products;
+
+    private InventoryWorkload workload;
+    // Random product numbers, walked in a cycle so choosing one costs next to nothing.
+    private int[] order;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workloads.create(InventoryWorkload.class, "Inventory");
+        workload.setUp(products);
+        order = new int[1 << 16];
+        Random random = new Random(42);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = random.nextInt(products);
+        }
+    }
+
+    private int nextProduct() {
+        return order[next++ & (order.length - 1)];
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object add() {
+        return workload.addAll();
+    }
+
+    @Benchmark
+    public Object lookupById() {
+        return workload.lookupById(nextProduct());
+    }
+
+    @Benchmark
+    public Object lookupByName() {
+        return workload.lookupByName(nextProduct());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object search() {
+        return workload.search(nextProduct());
+    }
+
+    /**
+     * A store filled before each iteration for {@link #remove}, which empties it.
+     */
+    @State(Scope.Thread)
+    public static class RemovalTarget {
+        @Setup(Level.Iteration)
+        public void fill(InventoryBenchmark benchmark) {
+            benchmark.workload.fillRemovalTarget();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void remove(RemovalTarget target) {
+        workload.removeAll();
+    }
+}
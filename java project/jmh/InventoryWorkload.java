@@ -0,0 +1,32 @@
+package jmh;
+
+/**
+ * Inventory operations timed by {@link InventoryBenchmark}, over a catalogue of a given size.
+ */
+public interface InventoryWorkload {
+    void setUp(int products);
+
+    /**
+     * Adds every product to a new, empty store and returns it.
+     */
+    Object addAll();
+
+    /**
+     * Looks up the product with the given number, from 0 to the catalogue size.
+     */
+    Object lookupById(int product);
+
+    Object lookupByName(int product);
+
+    /**
+     * Runs a typeahead search for a few characters of the product's name.
+     */
+    Object search(int product);
+
+    /**
+     * Fills a second store with a fresh copy of the catalogue for {@link #removeAll()}.
+     */
+    void fillRemovalTarget();
+
+    void removeAll();
+}
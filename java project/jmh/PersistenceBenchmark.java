@@ -0,0 +1,91 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading a large inventory: the text file in full and as a delta, the parallel
+ * text import, and binary snapshots. Each operation is timed once per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param("1000000")
+    public int products;
+
+    private PersistenceWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workload = Workloads.create(PersistenceWorkload.class, "Persistence");
+        workload.setUp(products);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public void saveText() {
+        workload.saveText();
+    }
+
+    /**
+     * A full save followed by a few changed products, before each iteration of
+     * {@link #saveTextDelta}.
+     */
+    @State(Scope.Thread)
+    public static class Delta {
+        @Param("1000")
+        public int changedProducts;
+
+        @Setup(Level.Iteration)
+        public void prepare(PersistenceBenchmark benchmark) {
+            benchmark.workload.prepareDelta(changedProducts);
+        }
+    }
+
+    @Benchmark
+    public void saveTextDelta(Delta delta) {
+        workload.saveTextDelta();
+    }
+
+    @Benchmark
+    public void loadText() {
+        workload.loadText();
+    }
+
+    @Benchmark
+    public void importText() {
+        workload.importText();
+    }
+
+    @Benchmark
+    public void saveSnapshot() {
+        workload.saveSnapshot();
+    }
+
+    @Benchmark
+    public void loadSnapshot() {
+        workload.loadSnapshot();
+    }
+}
@@ -0,0 +1,34 @@
+package jmh;
+
+import java.io.IOException;
+
+/**
+ * Saving and loading the inventory, timed by {@link PersistenceBenchmark}. Files go to a
+ * temporary directory removed by {@link #tearDown()}.
+ */
+public interface PersistenceWorkload {
+    void setUp(int products) throws IOException;
+
+    /**
+     * Saves every product as text, alternating between two files so each save is a full one.
+     */
+    void saveText();
+
+    /**
+     * Saves the text file in full and then changes {@code changes} products, so the next
+     * {@link #saveTextDelta()} writes only those.
+     */
+    void prepareDelta(int changes);
+
+    void saveTextDelta();
+
+    void loadText();
+
+    void importText();
+
+    void saveSnapshot();
+
+    void loadSnapshot();
+
+    void tearDown() throws IOException;
+}
@@ -0,0 +1,61 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the sales summary, rebuilding its aggregates and exporting the full report over a
+ * large transaction log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+    @Param("2000000")
+    public int transactions;
+
+    private ReportWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workload = Workloads.create(ReportWorkload.class, "Reports");
+        workload.setUp(transactions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object summary() {
+        return workload.summary();
+    }
+
+    @Benchmark
+    public Object rebuildAggregates() {
+        return workload.rebuildAggregates();
+    }
+
+    @Benchmark
+    public void export() {
+        workload.export();
+    }
+}
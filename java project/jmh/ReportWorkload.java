@@ -0,0 +1,25 @@
+package jmh;
+
+import java.io.IOException;
+
+/**
+ * Sales reporting over a large transaction log, timed by {@link ReportBenchmark}.
+ */
+public interface ReportWorkload {
+    /**
+     * Records {@code transactions} transactions spread over two years.
+     */
+    void setUp(int transactions) throws IOException;
+
+    Object summary();
+
+    /**
+     * Folds the whole log into fresh aggregates, which is what constructing a report generator
+     * costs.
+     */
+    Object rebuildAggregates();
+
+    void export();
+
+    void tearDown() throws IOException;
+}
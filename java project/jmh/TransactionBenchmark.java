@@ -0,0 +1,84 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording transactions through Main: one at a time on one thread and on one thread per core,
+ * and as end-of-day batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+    @Param("1000")
+    public int products;
+
+    @Param("200000")
+    public int batchSize;
+
+    private TransactionWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workloads.create(TransactionWorkload.class, "Transactions");
+        workload.setUp(products);
+    }
+
+    /**
+     * Numbers each thread's transactions, starting somewhere random so threads pick different
+     * products.
+     */
+    @State(Scope.Thread)
+    public static class Sequence {
+        long next = ThreadLocalRandom.current().nextLong();
+    }
+
+    @Benchmark
+    public void record(Sequence sequence) {
+        workload.record(sequence.next++);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void recordConcurrently(Sequence sequence) {
+        workload.record(sequence.next++);
+    }
+
+    /**
+     * A batch built, on a fresh application, before each iteration of {@link #recordBatch}.
+     */
+    @State(Scope.Thread)
+    public static class Batch {
+        @Setup(Level.Iteration)
+        public void prepare(TransactionBenchmark benchmark) {
+            benchmark.workload.prepareBatch(benchmark.batchSize);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public Object recordBatch(Batch batch) {
+        return workload.recordBatch();
+    }
+}
@@ -0,0 +1,24 @@
+package jmh;
+
+/**
+ * Transaction recording timed by {@link TransactionBenchmark}.
+ */
+public interface TransactionWorkload {
+    /**
+     * Creates an application with a catalogue of {@code products} products.
+     */
+    void setUp(int products);
+
+    /**
+     * Records one sale or purchase, chosen by {@code operation}, for a product chosen by it.
+     */
+    void record(long operation);
+
+    /**
+     * Builds a batch of {@code transactions} purchases, on a fresh application, for
+     * {@link #recordBatch()}.
+     */
+    void prepareBatch(int transactions);
+
+    Object recordBatch();
+}
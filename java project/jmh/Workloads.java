@@ -0,0 +1,29 @@
+package jmh;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Loads the workloads the benchmarks time. JMH only runs benchmarks in a named package, and the
+ * application classes live in the default package, which a named package cannot import. So each
+ * benchmark drives an interface declared here, implemented in the default package (see
+ * bench/BenchmarkWorkloads.java) and instantiated by name once per trial. The timed calls are
+ * ordinary interface calls.
+ */
+final class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Creates the workload {@code BenchmarkWorkloads$<name>} and silences the application's
+     * progress messages for the rest of the run.
+     */
+    static <T> T create(Class<T> type, String name) {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return type.cast(Class.forName("BenchmarkWorkloads$" + name).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark workload " + name, e);
+        }
+    }
+}